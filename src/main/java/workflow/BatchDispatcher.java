@@ -0,0 +1,19 @@
+package workflow;
+
+import java.util.concurrent.Future;
+
+/**
+ * Interface to hand the launches of batches by a WorkflowExecutor to the threads that run them.
+ * A WorkflowExecutor runs batches on a thread pool of its own unless it is given a BatchDispatcher,
+ * which lets several workflows share one pool (see WorkflowScheduler).
+ */
+public interface BatchDispatcher {
+
+    /**
+     * Run a launch of a batch once a thread is available
+     * @param launch the launch to run
+     * @param delayMillis the time to wait before the launch is eligible to run
+     * @return a Future that can be used to cancel the launch
+     */
+    public Future<?> dispatch(Runnable launch, long delayMillis);
+}
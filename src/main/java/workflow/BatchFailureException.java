@@ -0,0 +1,32 @@
+package workflow;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Thrown by a BatchRunner to signal that only some of the jobs in a batch failed.
+ * The jobs named by the exception are reported as failed and their dependents are skipped, while the other jobs
+ * of the batch are reported as completed and their dependents still run.
+ * Any other exception thrown by a BatchRunner fails every job in the batch.
+ */
+public class BatchFailureException extends WorkflowException {
+    private List<String> failedJobNames;
+
+    /**
+     * @param msg the reason the jobs failed
+     * @param failedJobs the names of the jobs of the batch that failed
+     */
+    public BatchFailureException(String msg, Collection<String> failedJobs) {
+        super(msg);
+        failedJobNames = Collections.unmodifiableList(new ArrayList<String>(failedJobs));
+    }
+
+    /**
+     * @return the names of the jobs of the batch that failed
+     */
+    public List<String> getFailedJobNames() {
+        return failedJobNames;
+    }
+}
@@ -0,0 +1,32 @@
+package workflow;
+
+import java.io.IOException;
+
+/**
+ * Interface to launch a batch of jobs of a single job type as one submission
+ * (for example, running several Hive queries in one session)
+ *
+ * Speculative execution is off by default. If it is turned on, a straggling batch may be launched a second time
+ * while its first launch is still running, so a BatchRunner must then be safe to launch more than once for the
+ * same batch (e.g. its jobs must not insert or export data twice), and should stop the launch that loses in cancel.
+ */
+public interface BatchRunner {
+
+    /**
+     * Launch a batch and wait for it to complete
+     * @param batch the batch to launch
+     * @throws BatchFailureException naming the failed jobs if only some of the jobs in the batch failed
+     * @throws TransientWorkflowException if the batch failed but is expected to succeed if launched again
+     * @throws IOException if the batch failed. Every job in the batch is then considered failed.
+     */
+    public void run(JobBatch batch) throws IOException;
+
+    /**
+     * Stop every launch of a batch that is still running, e.g. by killing the jobs submitted to the cluster.
+     * Called for the copy of a batch that lost to a speculative copy, and for running batches when execution is
+     * aborted. The thread running the launch is interrupted as well, but that alone does not stop remote jobs.
+     * @param batch the batch to stop
+     * @throws IOException if the launches could not be stopped
+     */
+    public void cancel(JobBatch batch) throws IOException;
+}
@@ -0,0 +1,42 @@
+package workflow;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Class BatchRunnerFactory
+ * Registry of the BatchRunner hook to use for launching batches of each job type.
+ * The registry is safe to use from multiple threads.
+ */
+public class BatchRunnerFactory {
+
+    private static final ConcurrentHashMap<String, BatchRunner> batchRunnersCache =
+            new ConcurrentHashMap<String, BatchRunner>();
+
+    /**
+     * Return the BatchRunner registered for a job type
+     * @param jobType the job type to return a BatchRunner for
+     * @return the BatchRunner registered for the job type
+     * @throws IOException if no BatchRunner has been registered for the job type
+     */
+    protected static BatchRunner getInstance(String jobType) throws IOException {
+        if (null == jobType) {
+            throw new IllegalArgumentException("Job type cannot be null");
+        }
+
+        BatchRunner runner = batchRunnersCache.get(jobType);
+        if (null == runner) {
+            throw new WorkflowException("Error: No batch runner registered for job type '" + jobType + "'.");
+        }
+        return runner;
+    }
+
+    /**
+     * Register a BatchRunner for a job type
+     * @param jobType the job type to launch with this BatchRunner
+     * @param runner the BatchRunner for this job type
+     */
+    protected static void registerBatchRunner(String jobType, BatchRunner runner) {
+        batchRunnersCache.put(jobType, runner);
+    }
+}
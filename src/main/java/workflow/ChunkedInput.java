@@ -0,0 +1,148 @@
+package workflow;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Class ChunkedInput
+ * Reads the input of file based parsers, which may be split into several chunk files and may be gzip-compressed.
+ * - The input source is a comma separated list of chunk files, parsed in the order listed.
+ *   An input source naming an existing file is always a single chunk, even if its path contains a comma.
+ * - Each chunk is decompressed transparently if it starts with the gzip magic number, whatever its name.
+ *   A chunk may contain several gzip members one after the other, as produced by concatenating .gz files.
+ * - Chunks are independent of each other, so they are decompressed and parsed in parallel, one thread per chunk
+ *   up to the number of processors. A single chunk is parsed on the calling thread.
+ * Chunks are streamed through their parser, so their decompressed text is never held in memory as a whole.
+ */
+public class ChunkedInput {
+
+    /**
+     * Parses a single chunk
+     * @param <T> the result of parsing a chunk
+     */
+    protected static interface ChunkParser<T> {
+
+        /**
+         * Parse a chunk
+         * @param in the decompressed contents of the chunk
+         * @return the result of parsing the chunk
+         * @throws IOException if the chunk cannot be read or parsed
+         */
+        public T parse(InputStream in) throws IOException;
+    }
+
+    private static final String CHUNK_SEPARATOR = ",";
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Split an input source into the paths of its chunks
+     * @param inputSource the path to a file, or a comma separated list of chunk files
+     * @return the paths of the chunk files, in order
+     */
+    protected static List<String> chunks(String inputSource) {
+        List<String> chunks = new ArrayList<String>();
+        if (new File(inputSource).isFile()) {
+            chunks.add(inputSource);
+            return chunks;
+        }
+        for (String chunk : inputSource.split(CHUNK_SEPARATOR)) {
+            if (chunk.trim().length() > 0) {
+                chunks.add(chunk.trim());
+            }
+        }
+        return chunks;
+    }
+
+    /**
+     * Open a chunk file, decompressing it if it is gzip-compressed
+     * @param path the path to the chunk file
+     * @return a stream of the decompressed contents of the chunk
+     * @throws IOException if the file cannot be opened
+     */
+    protected static InputStream open(String path) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(path), BUFFER_SIZE);
+        try {
+            in.mark(2);
+            int magic = in.read() | (in.read() << 8);
+            in.reset();
+            if (magic == GZIP_MAGIC) {
+                return new BufferedInputStream(new GZIPInputStream(in, BUFFER_SIZE), BUFFER_SIZE);
+            }
+            return in;
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Parse all chunks of an input source, in parallel if there is more than one
+     * @param inputSource the path to a file, or a comma separated list of chunk files
+     * @param parser the parser for a single chunk
+     * @return the results of parsing the chunks, in the order of the chunks
+     * @throws IOException if any chunk cannot be read or parsed
+     */
+    protected static <T> List<T> parse(String inputSource, final ChunkParser<T> parser) throws IOException {
+        List<String> chunks = chunks(inputSource);
+        List<T> results = new ArrayList<T>();
+        if (chunks.size() == 1) {
+            results.add(parseChunk(chunks.get(0), parser));
+            return results;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(chunks.size(), Runtime.getRuntime().availableProcessors())));
+        try {
+            List<Future<T>> futures = new ArrayList<Future<T>>();
+            for (final String chunk : chunks) {
+                futures.add(pool.submit(new Callable<T>() {
+                    @Override
+                    public T call() throws IOException {
+                        return parseChunk(chunk, parser);
+                    }
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    }
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    throw new WorkflowException("Error: Could not read chunk '" + chunks.get(i) + "' - " +
+                            cause.getLocalizedMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new WorkflowException("Error: Interrupted while reading chunk '" + chunks.get(i) + "'.");
+                }
+            }
+            return results;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static <T> T parseChunk(String chunk, ChunkParser<T> parser) throws IOException {
+        InputStream in = open(chunk);
+        try {
+            return parser.parse(in);
+        } finally {
+            in.close();
+        }
+    }
+}
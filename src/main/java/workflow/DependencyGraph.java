@@ -2,6 +2,7 @@ package workflow;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 
@@ -67,9 +68,12 @@ public class DependencyGraph {
 
     private List<TaskNode> vertices = null;
 
+    private HashMap<String, TaskNode> verticesByName = null;
+
     public DependencyGraph() {
         edgeMap = new LinkedHashMap<TaskNode, List<TaskNode>>();
         vertices = new ArrayList<TaskNode>();
+        verticesByName = new HashMap<String, TaskNode>();
     }
 
     /**
@@ -83,19 +87,24 @@ public class DependencyGraph {
         if (exists(task)) {
             throw new WorkflowException("Error: Task '" + task.getName() + "' already added. Please use a distinct name for tasks.");
         }
-        vertices.add(task);
+        List<TaskNode> dependencyTasks = new ArrayList<TaskNode>();
         if (null != task.dependencies) {
             for (String dependency : task.dependencies) {
+                if (task.name.equals(dependency)) {
+                    throw new WorkflowException("Error: Task '" + task.name + "' attempting to add a dependency on itself. This will create a dependency loop.");
+                }
                 TaskNode dependencyTask = getTaskByName(dependency);
                 if (null == dependencyTask) {
                     throw new WorkflowException("Error: Task '" + task.name + "' attempting to add a dependency on unknown task '" + dependency + "'.");
                 }
-                else if (task.equals(dependencyTask)) {
-                    throw new WorkflowException("Error: Task '" + task.name + "' attempting to add a dependency on itself. This will create a dependency loop.");
-                }
-                addEdge(task, dependencyTask);
+                dependencyTasks.add(dependencyTask);
             }
         }
+        vertices.add(task);
+        verticesByName.put(task.name, task);
+        for (TaskNode dependencyTask : dependencyTasks) {
+            addEdge(task, dependencyTask);
+        }
     }
 
     /**
@@ -104,12 +113,7 @@ public class DependencyGraph {
      * @return true if task already exists in the DependencyGraph, false otherwise
      */
     private boolean exists(TaskNode task) {
-        for (TaskNode vertex : vertices) {
-            if (vertex.getName().equals(task.getName())) {
-                return true;
-            }
-        }
-        return false;
+        return verticesByName.containsKey(task.getName());
     }
 
     /**
@@ -132,8 +136,21 @@ public class DependencyGraph {
         return vertices;
     }
 
+    /**
+     * Get the number of edges pointing to a task, i.e. the number of tasks that depend on it
+     * @param node the task to count incoming edges for
+     * @return the in-degree of the task
+     */
     protected int inDegree(TaskNode node) {
-        return node.dependencies.size();
+        int inDegree = 0;
+        for (List<TaskNode> targets : edgeMap.values()) {
+            for (TaskNode target : targets) {
+                if (target.equals(node)) {
+                    inDegree++;
+                }
+            }
+        }
+        return inDegree;
     }
 
     protected List<String> dependenciesOf(TaskNode node) {
@@ -141,11 +158,6 @@ public class DependencyGraph {
     }
 
     protected TaskNode getTaskByName(String taskName) {
-        for (TaskNode vertex : vertices) {
-            if (vertex.name.equals(taskName)) {
-                return vertex;
-            }
-        }
-        return null;
+        return verticesByName.get(taskName);
     }
 }
\ No newline at end of file
@@ -0,0 +1,308 @@
+package workflow;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class ExecutionMetrics
+ * Live metrics of a running workflow, maintained by WorkflowExecutor.
+ * For every job type and every stage, latency histograms are kept of:
+ * - queue wait: the time a launched batch waits for a thread in the pool
+ * - run time: the time a batch takes to run
+ * - ready-to-start delay: the time from a batch becoming ready to run (its stage starting) to it first starting
+ * All counters and histograms are lock-free, so recording adds negligible overhead to dispatching batches.
+ * The metrics can be exposed through JMX and printed periodically as a compact log line.
+ */
+public class ExecutionMetrics implements ExecutionMetricsMBean {
+
+    /**
+     * Latency histograms for a job type or a stage
+     */
+    private static class Latencies {
+        private final LatencyHistogram queueWait = new LatencyHistogram();
+        private final LatencyHistogram runTime = new LatencyHistogram();
+        private final LatencyHistogram readyToStart = new LatencyHistogram();
+
+        @Override
+        public String toString() {
+            return "wait[" + queueWait + "] run[" + runTime + "] ready[" + readyToStart + "]";
+        }
+    }
+
+    private static final AtomicInteger instances = new AtomicInteger();
+
+    private final int parallelism;
+    private final ConcurrentMap<String, Latencies> jobTypeLatencies = new ConcurrentHashMap<String, Latencies>();
+    private final ConcurrentMap<String, Latencies> stageLatencies = new ConcurrentHashMap<String, Latencies>();
+    private final AtomicLong launchedAttempts = new AtomicLong();
+    private final AtomicLong completedBatches = new AtomicLong();
+    private final AtomicLong failedAttempts = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong speculativeLaunches = new AtomicLong();
+    private final AtomicInteger readyJobs = new AtomicInteger();
+    private final AtomicInteger runningBatches = new AtomicInteger();
+    private AtomicInteger sharedPoolRunning = null;
+    private ObjectName objectName = null;
+    private ScheduledExecutorService reporter = null;
+
+    /**
+     * @param poolSize the number of threads in the pool batches run on
+     */
+    protected ExecutionMetrics(int poolSize) {
+        parallelism = poolSize;
+    }
+
+    /**
+     * Record that a batch has been launched
+     * @param batchSize the number of jobs in the batch
+     * @param queued true if the batch is queued for a thread right away, false if it is scheduled to run later
+     */
+    protected void launched(int batchSize, boolean queued) {
+        launchedAttempts.incrementAndGet();
+        if (queued) {
+            readyJobs.addAndGet(batchSize);
+        }
+    }
+
+    /**
+     * Record that a launched batch was cancelled before it started running
+     */
+    protected void cancelled(int batchSize, boolean queued) {
+        if (queued) {
+            readyJobs.addAndGet(-batchSize);
+        }
+    }
+
+    /**
+     * Record that a launched batch has started running
+     * @param queueWaitNanos the time the batch waited for a thread
+     * @param readyToStartNanos the time since the batch became ready to run, or -1 if this is not its first start
+     */
+    protected void started(Stage stage, JobBatch batch, boolean queued, long queueWaitNanos, long readyToStartNanos) {
+        if (queued) {
+            readyJobs.addAndGet(-batch.size());
+        }
+        runningBatches.incrementAndGet();
+        Latencies byType = latencies(jobTypeLatencies, batch.getJobType());
+        Latencies byStage = latencies(stageLatencies, stage.getName());
+        byType.queueWait.record(queueWaitNanos);
+        byStage.queueWait.record(queueWaitNanos);
+        if (readyToStartNanos >= 0) {
+            byType.readyToStart.record(readyToStartNanos);
+            byStage.readyToStart.record(readyToStartNanos);
+        }
+    }
+
+    /**
+     * Record that a batch has stopped running
+     * @param runTimeNanos the time the batch ran for
+     * @param succeeded true if the batch completed successfully
+     */
+    protected void finished(Stage stage, JobBatch batch, long runTimeNanos, boolean succeeded) {
+        runningBatches.decrementAndGet();
+        if (succeeded) {
+            latencies(jobTypeLatencies, batch.getJobType()).runTime.record(runTimeNanos);
+            latencies(stageLatencies, stage.getName()).runTime.record(runTimeNanos);
+        }
+        else {
+            failedAttempts.incrementAndGet();
+        }
+    }
+
+    protected void completed() {
+        completedBatches.incrementAndGet();
+    }
+
+    protected void retried() {
+        retries.incrementAndGet();
+    }
+
+    protected void speculated() {
+        speculativeLaunches.incrementAndGet();
+    }
+
+    /**
+     * Compute pool utilization from all batches running in a pool shared with other workflows,
+     * rather than from the batches of this workflow alone
+     * @param poolRunning the number of batches currently running in the shared pool
+     */
+    protected void sharePool(AtomicInteger poolRunning) {
+        sharedPoolRunning = poolRunning;
+    }
+
+    private static Latencies latencies(ConcurrentMap<String, Latencies> map, String key) {
+        Latencies latencies = map.get(key);
+        if (null == latencies) {
+            Latencies created = new Latencies();
+            latencies = map.putIfAbsent(key, created);
+            if (null == latencies) {
+                latencies = created;
+            }
+        }
+        return latencies;
+    }
+
+    @Override
+    public long getLaunchedAttempts() {
+        return launchedAttempts.get();
+    }
+
+    @Override
+    public long getCompletedBatches() {
+        return completedBatches.get();
+    }
+
+    @Override
+    public long getFailedAttempts() {
+        return failedAttempts.get();
+    }
+
+    @Override
+    public long getRetries() {
+        return retries.get();
+    }
+
+    @Override
+    public long getSpeculativeLaunches() {
+        return speculativeLaunches.get();
+    }
+
+    @Override
+    public int getReadyJobs() {
+        return readyJobs.get();
+    }
+
+    @Override
+    public int getRunningBatches() {
+        return runningBatches.get();
+    }
+
+    @Override
+    public int getPoolUtilization() {
+        int running = null == sharedPoolRunning ? runningBatches.get() : sharedPoolRunning.get();
+        return Math.min(100, running * 100 / parallelism);
+    }
+
+    @Override
+    public String[] getJobTypeLatencies() {
+        return summaries(jobTypeLatencies);
+    }
+
+    @Override
+    public String[] getStageLatencies() {
+        return summaries(stageLatencies);
+    }
+
+    private static String[] summaries(Map<String, Latencies> map) {
+        List<String> summaries = new ArrayList<String>();
+        for (Map.Entry<String, Latencies> entry : map.entrySet()) {
+            summaries.add(entry.getKey() + " " + entry.getValue());
+        }
+        return summaries.toArray(new String[summaries.size()]);
+    }
+
+    /**
+     * Get the metrics as a single compact line, e.g.
+     * "running=3/8 util=37% ready=5 launched=20 completed=15 failed=1 retries=1 speculative=0 | Hive run p95=300ms wait p95=1ms"
+     * @return the metrics as a single line
+     */
+    protected String toLogLine() {
+        StringBuilder line = new StringBuilder();
+        line.append("running=").append(getRunningBatches()).append('/').append(parallelism)
+                .append(" util=").append(getPoolUtilization()).append('%')
+                .append(" ready=").append(getReadyJobs())
+                .append(" launched=").append(getLaunchedAttempts())
+                .append(" completed=").append(getCompletedBatches())
+                .append(" failed=").append(getFailedAttempts())
+                .append(" retries=").append(getRetries())
+                .append(" speculative=").append(getSpeculativeLaunches());
+        for (Map.Entry<String, Latencies> entry : jobTypeLatencies.entrySet()) {
+            line.append(" | ").append(entry.getKey())
+                    .append(" run p95=").append(entry.getValue().runTime.getPercentileMillis(95)).append("ms")
+                    .append(" wait p95=").append(entry.getValue().queueWait.getPercentileMillis(95)).append("ms");
+        }
+        return line.toString();
+    }
+
+    /**
+     * Register the metrics with the platform MBean server under "workflow:type=ExecutionMetrics,name=[n]",
+     * where n is a number unique to each run within the JVM, so that concurrent runs do not collide.
+     * JMX clients should query for the pattern "workflow:type=ExecutionMetrics,*".
+     * The metrics are only for observation, so if they cannot be registered (e.g. the MBean server is restricted)
+     * a warning is printed and the workflow runs without them.
+     * @return true if the metrics were registered
+     */
+    protected boolean registerMBean() {
+        try {
+            objectName = new ObjectName("workflow:type=ExecutionMetrics,name=" + instances.incrementAndGet());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            return true;
+        } catch (JMException e) {
+            return registrationFailed(e);
+        } catch (SecurityException e) {
+            return registrationFailed(e);
+        }
+    }
+
+    private boolean registrationFailed(Exception e) {
+        objectName = null;
+        System.err.println("Warning: Could not register execution metrics with JMX, running without them - " +
+                e.getMessage());
+        return false;
+    }
+
+    /**
+     * Print the metrics as a compact log line periodically until stop() is called
+     * @param out the PrintStream to print to
+     * @param periodMillis the time between log lines
+     */
+    protected void startReporting(final PrintStream out, long periodMillis) {
+        reporter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "workflow-metrics-reporter");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        reporter.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                out.println(toLogLine());
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop periodic reporting and unregister the metrics from JMX
+     */
+    protected void stop() {
+        if (null != reporter) {
+            reporter.shutdownNow();
+            reporter = null;
+        }
+        if (null != objectName) {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            try {
+                server.unregisterMBean(objectName);
+            } catch (JMException e) {
+                // already unregistered
+            }
+            objectName = null;
+        }
+    }
+}
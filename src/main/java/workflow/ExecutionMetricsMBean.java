@@ -0,0 +1,43 @@
+package workflow;
+
+/**
+ * JMX management interface of ExecutionMetrics
+ */
+public interface ExecutionMetricsMBean {
+
+    public long getLaunchedAttempts();
+
+    public long getCompletedBatches();
+
+    public long getFailedAttempts();
+
+    public long getRetries();
+
+    public long getSpeculativeLaunches();
+
+    /**
+     * @return the number of jobs launched but still waiting for a thread in the pool
+     */
+    public int getReadyJobs();
+
+    /**
+     * @return the number of batches currently running
+     */
+    public int getRunningBatches();
+
+    /**
+     * @return the percentage of threads in the pool currently running a batch,
+     * counting the batches of all workflows if the pool is shared by a WorkflowScheduler
+     */
+    public int getPoolUtilization();
+
+    /**
+     * @return one summary line of queue wait, run time and ready-to-start delay per job type
+     */
+    public String[] getJobTypeLatencies();
+
+    /**
+     * @return one summary line of queue wait, run time and ready-to-start delay per stage
+     */
+    public String[] getStageLatencies();
+}
@@ -0,0 +1,90 @@
+package workflow;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class ExecutionReport
+ * The outcome of executing a workflow: the jobs that completed, the jobs that failed along with the reason,
+ * and the jobs that were skipped because a job they depend on (directly or transitively) failed.
+ * Jobs that were neither completed, failed nor skipped were never reached, e.g. because execution was interrupted.
+ */
+public class ExecutionReport {
+
+    private List<String> completedJobs = new ArrayList<String>();
+    private Map<String, String> failedJobs = new LinkedHashMap<String, String>();
+    private List<String> skippedJobs = new ArrayList<String>();
+
+    protected synchronized void completed(JobBatch batch) {
+        for (DependencyGraph.TaskNode job : batch.getJobs()) {
+            completedJobs.add(job.getName());
+        }
+    }
+
+    protected synchronized void completed(DependencyGraph.TaskNode job) {
+        completedJobs.add(job.getName());
+    }
+
+    protected synchronized void failed(DependencyGraph.TaskNode job, String reason) {
+        failedJobs.put(job.getName(), reason);
+    }
+
+    protected synchronized void skipped(DependencyGraph.TaskNode job) {
+        skippedJobs.add(job.getName());
+    }
+
+    /**
+     * @return the names of the jobs that completed, in order of completion
+     */
+    public synchronized List<String> getCompletedJobs() {
+        return Collections.unmodifiableList(new ArrayList<String>(completedJobs));
+    }
+
+    /**
+     * @return the names of the jobs that failed, in order of failure
+     */
+    public synchronized List<String> getFailedJobs() {
+        return Collections.unmodifiableList(new ArrayList<String>(failedJobs.keySet()));
+    }
+
+    /**
+     * @return the names of the jobs that were skipped because a job upstream of them failed
+     */
+    public synchronized List<String> getSkippedJobs() {
+        return Collections.unmodifiableList(new ArrayList<String>(skippedJobs));
+    }
+
+    /**
+     * Get the reason a job failed
+     * @param jobName the name of the job
+     * @return the error the job failed with, or null if the job did not fail
+     */
+    public synchronized String getFailure(String jobName) {
+        return failedJobs.get(jobName);
+    }
+
+    /**
+     * @return true if no job failed
+     */
+    public synchronized boolean isSuccessful() {
+        return failedJobs.isEmpty();
+    }
+
+    /**
+     * Print the report to a PrintStream
+     * @param out the PrintStream to print to
+     */
+    public synchronized void print(PrintStream out) {
+        out.println("Completed: " + completedJobs.size() + " " + completedJobs);
+        out.println("Failed: " + failedJobs.size());
+        for (Map.Entry<String, String> failure : failedJobs.entrySet()) {
+            out.println("    " + failure.getKey() + " - " + failure.getValue());
+        }
+        out.println("Skipped: " + skippedJobs.size() + " " + skippedJobs);
+        out.println();
+    }
+}
@@ -0,0 +1,252 @@
+package workflow;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class ExternalDependencyGraph
+ * A DependencyGraph for workflows too large to hold on the heap.
+ * Tasks, their dependencies and per-task state live in memory-mapped files in a work directory,
+ * so heap usage stays bounded regardless of the number of tasks and dependencies:
+ * - names: the UTF-8 encoded task names
+ * - nodes: a fixed-size record per task holding the offset of its name, the range of its dependencies
+ *   in the edges file, its job type and its stage
+ * - edges: the ids of the dependencies of every task, stored contiguously per task
+ * - index: an open-addressing hash table from task name to task id, used to resolve dependencies by name
+ * Only the distinct job types, of which there are few, are kept on the heap.
+ * As with DependencyGraph, a task can only depend on tasks added before it.
+ */
+public class ExternalDependencyGraph {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int NODE_RECORD_SIZE = 32;
+    private static final int NAME_OFFSET = 0;
+    private static final int FIRST_EDGE_OFFSET = 8;
+    private static final int JOB_TYPE_OFFSET = 16;
+    private static final int DEPENDENCY_COUNT_OFFSET = 20;
+    private static final int STAGE_OFFSET = 24;
+
+    private static final int INITIAL_INDEX_CAPACITY = 1 << 16;
+
+    private File workDirectory = null;
+    private MappedBuffer names = null;
+    private MappedBuffer nodes = null;
+    private MappedBuffer edges = null;
+    private MappedBuffer index = null;
+    private long namesLength = 0;
+    private long edgeCount = 0;
+    private int taskCount = 0;
+    private long indexCapacity = INITIAL_INDEX_CAPACITY;
+    private int indexGeneration = 0;
+    private boolean createdWorkDirectory = false;
+    private List<String> jobTypes = new ArrayList<String>();
+    private Map<String, Integer> jobTypeIds = new HashMap<String, Integer>();
+
+    /**
+     * Create an empty graph backed by files in a work directory
+     * @param directory the directory to create the backing files in
+     * @throws IOException if the backing files cannot be created
+     */
+    public ExternalDependencyGraph(File directory) throws IOException {
+        if (!directory.isDirectory()) {
+            if (!directory.mkdirs()) {
+                throw new WorkflowException("Error: Could not create work directory '" + directory + "'.");
+            }
+            createdWorkDirectory = true;
+        }
+        workDirectory = directory;
+        names = new MappedBuffer(new File(directory, "names.dat"));
+        nodes = new MappedBuffer(new File(directory, "nodes.dat"));
+        edges = new MappedBuffer(new File(directory, "edges.dat"));
+        index = new MappedBuffer(new File(directory, "index.0.dat"));
+        index.putInt(indexCapacity * 4 - 4, 0);
+    }
+
+    /**
+     * Adds a task to the graph
+     * @param task the task to add to the graph
+     * @throws IOException if the task is a duplicate, depends on itself or on an unknown task,
+     * or cannot be written to the backing files
+     */
+    protected void addTask(DependencyGraph.TaskNode task) throws IOException {
+        String name = task.getName();
+        if (findTask(name) >= 0) {
+            throw new WorkflowException("Error: Task '" + name + "' already added. Please use a distinct name for tasks.");
+        }
+        long firstEdge = edgeCount;
+        List<String> dependencies = task.getDependencies();
+        int dependencyCount = null == dependencies ? 0 : dependencies.size();
+        for (int i = 0; i < dependencyCount; i++) {
+            String dependency = dependencies.get(i);
+            if (name.equals(dependency)) {
+                throw new WorkflowException("Error: Task '" + name + "' attempting to add a dependency on itself. This will create a dependency loop.");
+            }
+            int dependencyId = findTask(dependency);
+            if (dependencyId < 0) {
+                throw new WorkflowException("Error: Task '" + name + "' attempting to add a dependency on unknown task '" + dependency + "'.");
+            }
+            edges.putInt((firstEdge + i) * 4, dependencyId);
+        }
+        edgeCount += dependencyCount;
+
+        int id = taskCount++;
+        long record = (long) id * NODE_RECORD_SIZE;
+        nodes.putLong(record + NAME_OFFSET, writeName(name));
+        nodes.putLong(record + FIRST_EDGE_OFFSET, firstEdge);
+        nodes.putInt(record + JOB_TYPE_OFFSET, jobTypeId(task.getJobType()));
+        nodes.putInt(record + DEPENDENCY_COUNT_OFFSET, dependencyCount);
+        nodes.putInt(record + STAGE_OFFSET, 0);
+        insertIntoIndex(name, id);
+    }
+
+    protected int getTaskCount() {
+        return taskCount;
+    }
+
+    protected long getEdgeCount() {
+        return edgeCount;
+    }
+
+    protected String getName(int id) {
+        return readName(nodes.getLong((long) id * NODE_RECORD_SIZE + NAME_OFFSET));
+    }
+
+    protected String getJobType(int id) {
+        return jobTypes.get(nodes.getInt((long) id * NODE_RECORD_SIZE + JOB_TYPE_OFFSET));
+    }
+
+    protected int dependencyCount(int id) {
+        return nodes.getInt((long) id * NODE_RECORD_SIZE + DEPENDENCY_COUNT_OFFSET);
+    }
+
+    /**
+     * Get the id of the i-th dependency of a task
+     * @param id the id of the task
+     * @param i the index of the dependency, between 0 and dependencyCount(id) - 1
+     * @return the id of the dependency
+     */
+    protected int dependency(int id, int i) {
+        long firstEdge = nodes.getLong((long) id * NODE_RECORD_SIZE + FIRST_EDGE_OFFSET);
+        return edges.getInt((firstEdge + i) * 4);
+    }
+
+    protected int getStage(int id) {
+        return nodes.getInt((long) id * NODE_RECORD_SIZE + STAGE_OFFSET);
+    }
+
+    protected void setStage(int id, int stage) throws IOException {
+        nodes.putInt((long) id * NODE_RECORD_SIZE + STAGE_OFFSET, stage);
+    }
+
+    protected File getWorkDirectory() {
+        return workDirectory;
+    }
+
+    /**
+     * Release and delete the backing files, and the work directory if it was created for this graph and is empty.
+     * Close any ExternalWorkflowGenerator for the graph first.
+     * @throws IOException if the backing files cannot be closed
+     */
+    public void close() throws IOException {
+        names.close();
+        nodes.close();
+        edges.close();
+        index.close();
+        if (createdWorkDirectory) {
+            workDirectory.delete();
+        }
+    }
+
+    /**
+     * Look up a task by name
+     * @param name the name of the task
+     * @return the id of the task, or -1 if no task with the name has been added
+     */
+    protected int findTask(String name) {
+        long mask = indexCapacity - 1;
+        for (long slot = hash(name) & mask; ; slot = (slot + 1) & mask) {
+            int entry = index.getInt(slot * 4);
+            if (entry == 0) {
+                return -1;
+            }
+            if (getName(entry - 1).equals(name)) {
+                return entry - 1;
+            }
+        }
+    }
+
+    private void insertIntoIndex(String name, int id) throws IOException {
+        if ((long) taskCount * 2 > indexCapacity) {
+            growIndex();
+        }
+        insertIntoIndex(index, indexCapacity, hash(name), id);
+    }
+
+    private static void insertIntoIndex(MappedBuffer table, long capacity, int hash, int id) throws IOException {
+        long mask = capacity - 1;
+        long slot = hash & mask;
+        while (table.getInt(slot * 4) != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table.putInt(slot * 4, id + 1);
+    }
+
+    /**
+     * Double the capacity of the name index, rehashing every task into a new file
+     */
+    private void growIndex() throws IOException {
+        long capacity = indexCapacity * 2;
+        indexGeneration++;
+        MappedBuffer grown = new MappedBuffer(new File(workDirectory, "index." + indexGeneration + ".dat"));
+        grown.putInt(capacity * 4 - 4, 0);
+        for (int id = 0; id < taskCount - 1; id++) {
+            insertIntoIndex(grown, capacity, hash(getName(id)), id);
+        }
+        index.close();
+        index = grown;
+        indexCapacity = capacity;
+    }
+
+    private static int hash(String name) {
+        int h = name.hashCode();
+        h ^= (h >>> 16);
+        h *= 0x85ebca6b;
+        h ^= (h >>> 13);
+        return h & Integer.MAX_VALUE;
+    }
+
+    /**
+     * Append a name to the names file
+     * @return the offset of the name record, which is aligned to 4 bytes
+     */
+    private long writeName(String name) throws IOException {
+        byte[] bytes = name.getBytes(UTF8);
+        long offset = namesLength;
+        names.putInt(offset, bytes.length);
+        names.putBytes(offset + 4, bytes);
+        namesLength = (offset + 4 + bytes.length + 3) & ~3L;
+        return offset;
+    }
+
+    private String readName(long offset) {
+        byte[] bytes = new byte[names.getInt(offset)];
+        names.getBytes(offset + 4, bytes);
+        return new String(bytes, UTF8);
+    }
+
+    private int jobTypeId(String jobType) {
+        Integer id = jobTypeIds.get(jobType);
+        if (null == id) {
+            id = jobTypes.size();
+            jobTypes.add(jobType);
+            jobTypeIds.put(jobType, id);
+        }
+        return id;
+    }
+}
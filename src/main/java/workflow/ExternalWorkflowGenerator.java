@@ -0,0 +1,139 @@
+package workflow;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import static workflow.WorkflowUtil.*;
+
+/**
+ * Class ExternalWorkflowGenerator
+ * Generates a workflow for an ExternalDependencyGraph, keeping all per-task state in memory-mapped files.
+ * The stages are the same as those generated by WorkflowGenerator: a task is scheduled in the stage
+ * following the last stage any of its dependencies is scheduled in, and tasks within a stage keep the order
+ * they were added to the graph in.
+ * Since a task can only depend on tasks added before it, the stage of every task is computed in a single pass
+ * over the tasks in the order they were added. The tasks are then bucketed by stage with a counting sort,
+ * so generation takes time linear in the size of the graph and only a small working set is resident at a time.
+ */
+public class ExternalWorkflowGenerator {
+
+    private ExternalDependencyGraph dependencyGraph = null;
+    private MappedBuffer stageEnds = null;
+    private MappedBuffer order = null;
+    private int stageCount = 0;
+
+    protected ExternalWorkflowGenerator(ExternalDependencyGraph graph) {
+        dependencyGraph = graph;
+    }
+
+    /**
+     * Generates a workflow for the ExternalDependencyGraph
+     * @throws IOException if the working files cannot be written
+     */
+    protected void generate() throws IOException {
+        File directory = dependencyGraph.getWorkDirectory();
+        stageEnds = new MappedBuffer(new File(directory, "stages.dat"));
+        order = new MappedBuffer(new File(directory, "order.dat"));
+        int taskCount = dependencyGraph.getTaskCount();
+
+        // assign every task to a stage and count the tasks in each stage
+        for (int id = 0; id < taskCount; id++) {
+            int stage = 1;
+            int dependencyCount = dependencyGraph.dependencyCount(id);
+            for (int i = 0; i < dependencyCount; i++) {
+                stage = Math.max(stage, dependencyGraph.getStage(dependencyGraph.dependency(id, i)) + 1);
+            }
+            dependencyGraph.setStage(id, stage);
+            if (stage > stageCount) {
+                stageEnds.putLong((long) stage * 8, 0);
+                stageCount = stage;
+            }
+            stageEnds.putLong((long) stage * 8, stageEnds.getLong((long) stage * 8) + 1);
+        }
+
+        // turn the counts into the position each stage starts at in the ordered list of tasks
+        long start = 0;
+        for (int stage = 1; stage <= stageCount; stage++) {
+            long count = stageEnds.getLong((long) stage * 8);
+            stageEnds.putLong((long) stage * 8, start);
+            start += count;
+        }
+
+        // place every task after the tasks of its stage placed before it.
+        // Once done, the position held for each stage is where the stage ends.
+        for (int id = 0; id < taskCount; id++) {
+            long position = (long) dependencyGraph.getStage(id) * 8;
+            long next = stageEnds.getLong(position);
+            order.putInt(next * 4, id);
+            stageEnds.putLong(position, next + 1);
+        }
+    }
+
+    /**
+     * Get the number of stages in the generated workflow
+     * @return the number of stages
+     */
+    protected int getStageCount() {
+        return stageCount;
+    }
+
+    /**
+     * Get the ids of the tasks in a stage
+     * @param stage the stage number, between 1 and getStageCount()
+     * @return the ids of the tasks in the stage, in the order they were added to the graph
+     */
+    protected int[] getStage(int stage) {
+        long start = stage == 1 ? 0 : stageEnds.getLong((long) (stage - 1) * 8);
+        long end = stageEnds.getLong((long) stage * 8);
+        int[] ids = new int[(int) (end - start)];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = order.getInt((start + i) * 4);
+        }
+        return ids;
+    }
+
+    /**
+     * Print the workflow to a PrintStream, streaming through the stages one task at a time
+     * @param out the PrintStream to print to
+     */
+    protected void print(PrintStream out) {
+        long start = 0;
+        for (int stage = 1; stage <= stageCount; stage++) {
+            long end = stageEnds.getLong((long) stage * 8);
+            out.println(Stage.STAGE + stage);
+            for (long position = start; position < end; position++) {
+                printTask(out, order.getInt(position * 4));
+            }
+            out.println();
+            start = end;
+        }
+    }
+
+    private void printTask(PrintStream out, int id) {
+        out.print(dependencyGraph.getName(id) + ": " + dependencyGraph.getJobType(id));
+        int dependencyCount = dependencyGraph.dependencyCount(id);
+        if (dependencyCount > 0) {
+            out.print(" (" + JSON_KEYS.depends_on.toString() + ": ");
+            for (int i = 0; i < dependencyCount; i++) {
+                out.print(dependencyGraph.getName(dependencyGraph.dependency(id, i)));
+                if (i < dependencyCount - 1) {
+                    out.print(", ");
+                }
+            }
+            out.print(")");
+        }
+        out.println();
+    }
+
+    /**
+     * Release and delete the working files
+     * @throws IOException if the working files cannot be closed
+     */
+    protected void close() throws IOException {
+        if (null != stageEnds) {
+            stageEnds.close();
+            order.close();
+        }
+    }
+}
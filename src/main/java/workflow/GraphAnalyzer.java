@@ -0,0 +1,152 @@
+package workflow;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Class GraphAnalyzer
+ * Computes a GraphReport for a DependencyGraph in time linear in the number of tasks and dependencies.
+ * Tasks are always added to the graph after their dependencies, so a single pass over the tasks in order computes
+ * the stage of every task, the chain of dependencies leading to it, and the weakly connected components
+ * (with a union-find over the tasks). Everything is kept in arrays indexed by the position of a task in the graph.
+ */
+public class GraphAnalyzer {
+
+    private static final int DEFAULT_MAX_CHAINS = 3;
+
+    private DependencyGraph dependencyGraph = null;
+    private int maxChains;
+
+    protected GraphAnalyzer(DependencyGraph graph) {
+        this(graph, DEFAULT_MAX_CHAINS);
+    }
+
+    /**
+     * @param graph the graph to analyze
+     * @param maxLongestChains the maximum number of longest chains to report
+     */
+    protected GraphAnalyzer(DependencyGraph graph, int maxLongestChains) {
+        dependencyGraph = graph;
+        maxChains = maxLongestChains;
+    }
+
+    /**
+     * Analyze the graph
+     * @return the report of the analysis
+     */
+    protected GraphReport analyze() {
+        List<DependencyGraph.TaskNode> tasks = dependencyGraph.getAllTasks();
+        int taskCount = tasks.size();
+        Map<String, Integer> ids = new HashMap<String, Integer>(taskCount * 4 / 3 + 1);
+        int[] stageOf = new int[taskCount];
+        int[] previousInChain = new int[taskCount];
+        int[] fanOut = new int[taskCount];
+        int[] component = new int[taskCount];
+        int[] componentSize = new int[taskCount];
+        SortedMap<Integer, Integer> fanInHistogram = new TreeMap<Integer, Integer>();
+        List<Integer> stageWidths = new ArrayList<Integer>();
+        List<SortedMap<String, Integer>> jobTypeMix = new ArrayList<SortedMap<String, Integer>>();
+        long dependencyCount = 0;
+
+        for (int id = 0; id < taskCount; id++) {
+            DependencyGraph.TaskNode task = tasks.get(id);
+            ids.put(task.getName(), id);
+            component[id] = id;
+            componentSize[id] = 1;
+            previousInChain[id] = -1;
+            int stage = 0;
+            List<String> dependencies = dependencyGraph.dependenciesOf(task);
+            int fanIn = null == dependencies ? 0 : dependencies.size();
+            for (int i = 0; i < fanIn; i++) {
+                int dependency = ids.get(dependencies.get(i));
+                fanOut[dependency]++;
+                if (stageOf[dependency] + 1 > stage) {
+                    stage = stageOf[dependency] + 1;
+                    previousInChain[id] = dependency;
+                }
+                union(component, componentSize, id, dependency);
+            }
+            dependencyCount += fanIn;
+            stageOf[id] = stage;
+            increment(fanInHistogram, fanIn);
+            if (stage == stageWidths.size()) {
+                stageWidths.add(0);
+                jobTypeMix.add(new TreeMap<String, Integer>());
+            }
+            stageWidths.set(stage, stageWidths.get(stage) + 1);
+            increment(jobTypeMix.get(stage), task.getJobType());
+        }
+
+        SortedMap<Integer, Integer> fanOutHistogram = new TreeMap<Integer, Integer>();
+        int componentCount = 0;
+        int largestComponent = 0;
+        int isolatedTasks = 0;
+        for (int id = 0; id < taskCount; id++) {
+            increment(fanOutHistogram, fanOut[id]);
+            if (find(component, id) == id) {
+                componentCount++;
+                largestComponent = Math.max(largestComponent, componentSize[id]);
+                if (componentSize[id] == 1) {
+                    isolatedTasks++;
+                }
+            }
+        }
+
+        int depth = stageWidths.size();
+        List<List<String>> longestChains = new ArrayList<List<String>>();
+        for (int id = 0; id < taskCount && longestChains.size() < maxChains; id++) {
+            if (stageOf[id] == depth - 1) {
+                String[] chain = new String[depth];
+                for (int link = id, i = depth - 1; link >= 0; link = previousInChain[link], i--) {
+                    chain[i] = tasks.get(link).getName();
+                }
+                List<String> chainList = new ArrayList<String>(depth);
+                for (String name : chain) {
+                    chainList.add(name);
+                }
+                longestChains.add(chainList);
+            }
+        }
+
+        return new GraphReport(taskCount, dependencyCount, stageWidths, jobTypeMix, fanInHistogram, fanOutHistogram,
+                longestChains, componentCount, largestComponent, isolatedTasks);
+    }
+
+    /**
+     * Find the representative of the component of a task, halving the path to it along the way
+     */
+    private static int find(int[] component, int id) {
+        while (component[id] != id) {
+            component[id] = component[component[id]];
+            id = component[id];
+        }
+        return id;
+    }
+
+    /**
+     * Merge the components of two tasks, attaching the smaller component to the larger one
+     */
+    private static void union(int[] component, int[] componentSize, int first, int second) {
+        int firstRoot = find(component, first);
+        int secondRoot = find(component, second);
+        if (firstRoot == secondRoot) {
+            return;
+        }
+        if (componentSize[firstRoot] < componentSize[secondRoot]) {
+            int swap = firstRoot;
+            firstRoot = secondRoot;
+            secondRoot = swap;
+        }
+        component[secondRoot] = firstRoot;
+        componentSize[firstRoot] += componentSize[secondRoot];
+    }
+
+    private static <K> void increment(Map<K, Integer> counts, K key) {
+        Integer count = counts.get(key);
+        counts.put(key, null == count ? 1 : count + 1);
+    }
+}
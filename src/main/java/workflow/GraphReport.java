@@ -0,0 +1,157 @@
+package workflow;
+
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Class GraphReport
+ * The shape of a DependencyGraph, for sizing the clusters that run its workflow:
+ * its depth and the number of tasks in every stage, the mix of job types in every stage, histograms of the number
+ * of dependencies (fan-in) and dependents (fan-out) of tasks, its longest chains of dependencies,
+ * and its weakly connected components, i.e. the groups of tasks that are independent of each other.
+ */
+public class GraphReport {
+
+    private int taskCount;
+    private long dependencyCount;
+    private List<Integer> stageWidths = null;
+    private List<SortedMap<String, Integer>> jobTypeMix = null;
+    private SortedMap<Integer, Integer> fanInHistogram = null;
+    private SortedMap<Integer, Integer> fanOutHistogram = null;
+    private List<List<String>> longestChains = null;
+    private int componentCount;
+    private int largestComponent;
+    private int isolatedTasks;
+
+    protected GraphReport(int tasks, long dependencies, List<Integer> widths,
+                          List<SortedMap<String, Integer>> mix, SortedMap<Integer, Integer> fanIn,
+                          SortedMap<Integer, Integer> fanOut, List<List<String>> chains,
+                          int components, int largest, int isolated) {
+        taskCount = tasks;
+        dependencyCount = dependencies;
+        stageWidths = Collections.unmodifiableList(widths);
+        jobTypeMix = Collections.unmodifiableList(mix);
+        fanInHistogram = Collections.unmodifiableSortedMap(fanIn);
+        fanOutHistogram = Collections.unmodifiableSortedMap(fanOut);
+        longestChains = Collections.unmodifiableList(chains);
+        componentCount = components;
+        largestComponent = largest;
+        isolatedTasks = isolated;
+    }
+
+    public int getTaskCount() {
+        return taskCount;
+    }
+
+    public long getDependencyCount() {
+        return dependencyCount;
+    }
+
+    /**
+     * @return the number of stages in the workflow, i.e. the number of tasks in the longest chain of dependencies
+     */
+    public int getDepth() {
+        return stageWidths.size();
+    }
+
+    /**
+     * @return the number of tasks in every stage, in order of execution
+     */
+    public List<Integer> getStageWidths() {
+        return stageWidths;
+    }
+
+    /**
+     * @return the number of tasks of every job type in every stage, in order of execution
+     */
+    public List<SortedMap<String, Integer>> getJobTypeMix() {
+        return jobTypeMix;
+    }
+
+    /**
+     * @return the number of tasks by their number of dependencies
+     */
+    public SortedMap<Integer, Integer> getFanInHistogram() {
+        return fanInHistogram;
+    }
+
+    /**
+     * @return the number of tasks by their number of dependents
+     */
+    public SortedMap<Integer, Integer> getFanOutHistogram() {
+        return fanOutHistogram;
+    }
+
+    /**
+     * @return the longest chains of dependencies, each from its first task to its last
+     */
+    public List<List<String>> getLongestChains() {
+        return longestChains;
+    }
+
+    /**
+     * @return the number of weakly connected components, i.e. groups of tasks independent of each other
+     */
+    public int getComponentCount() {
+        return componentCount;
+    }
+
+    /**
+     * @return the number of tasks in the largest weakly connected component
+     */
+    public int getLargestComponent() {
+        return largestComponent;
+    }
+
+    /**
+     * @return the number of tasks without dependencies or dependents
+     */
+    public int getIsolatedTasks() {
+        return isolatedTasks;
+    }
+
+    /**
+     * Print the report to a PrintStream
+     * @param out the PrintStream to print to
+     */
+    public void print(PrintStream out) {
+        out.println("Tasks: " + taskCount + ", Dependencies: " + dependencyCount + ", Depth: " + getDepth());
+        for (int i = 0; i < stageWidths.size(); i++) {
+            out.print(Stage.STAGE + (i + 1) + ": " + stageWidths.get(i) + " (");
+            printCounts(out, jobTypeMix.get(i));
+            out.println(")");
+        }
+        out.print("Fan-in: ");
+        printCounts(out, fanInHistogram);
+        out.println();
+        out.print("Fan-out: ");
+        printCounts(out, fanOutHistogram);
+        out.println();
+        for (List<String> chain : longestChains) {
+            out.print("Longest chain: ");
+            for (int i = 0; i < chain.size(); i++) {
+                out.print(chain.get(i));
+                if (i < chain.size() - 1) {
+                    out.print(" -> ");
+                }
+            }
+            out.println();
+        }
+        out.println("Components: " + componentCount + " (largest: " + largestComponent +
+                ", isolated: " + isolatedTasks + ")");
+        out.println();
+    }
+
+    private static void printCounts(PrintStream out, Map<?, Integer> counts) {
+        int printed = 0;
+        for (Map.Entry<?, Integer> count : counts.entrySet()) {
+            out.print(count.getKey() + ": " + count.getValue());
+            if (++printed < counts.size()) {
+                out.print(", ");
+            }
+        }
+    }
+}
@@ -3,21 +3,89 @@ package workflow;
 import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
-import java.util.HashMap;
+import java.util.Iterator;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static workflow.WorkflowUtil.*;
 
 /**
  * Class InputParserFactory
- * Factory to pick a way of reading input based on an input type and parsing it into a DependencyGraph
+ * Factory to pick a way of reading input based on an input type and parsing it into a DependencyGraph.
+ * The factory is safe to use from multiple threads. Every call to getInstance returns a new InputParser,
+ * so concurrent callers never share parser state.
+ * Besides the built-in input types, InputParserProviders found on the classpath through
+ * java.util.ServiceLoader are registered when the factory is loaded. A provider that cannot be loaded
+ * (e.g. a META-INF/services entry naming a missing class) is skipped with a warning, so the built-in input types
+ * and every other provider keep working.
  */
 public class InputParserFactory {
 
-    private static HashMap<String, InputParser> inputParsersCache = new HashMap<String, InputParser>();
-    private static HashMap<String, Class> inputParsersClassCache = new HashMap<String, Class>();
+    /**
+     * Creates InputParsers by reflectively invoking the no-argument constructor of an InputParser class
+     */
+    private static class ReflectiveInputParserProvider implements InputParserProvider {
+        private final String inputType;
+        private final Constructor<? extends InputParser> constructor;
+
+        private ReflectiveInputParserProvider(String type, Class<? extends InputParser> classz) {
+            inputType = type;
+            try {
+                constructor = classz.getDeclaredConstructor(new Class[]{});
+            } catch (NoSuchMethodException e) {
+                throw new IllegalStateException(e);
+            }
+            constructor.setAccessible(true);
+        }
+
+        @Override
+        public String getInputType() {
+            return inputType;
+        }
+
+        @Override
+        public InputParser newInputParser() {
+            try {
+                return constructor.newInstance();
+            } catch (InstantiationException e) {
+                throw new IllegalStateException(e);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            } catch (InvocationTargetException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private static final ConcurrentHashMap<String, InputParserProvider> inputParserProviders =
+            new ConcurrentHashMap<String, InputParserProvider>();
+
+    static {
+        registerInputParser(JSON_FILE_INPUT_TYPE, JsonFileInputParser.class);
+        registerInputParser(INTERACTIVE_INPUT_TYPE, InteractiveInputParser.class);
+        registerInputParser(PROPERTIES_FILE_INPUT_TYPE, PropertiesFileInputParser.class);
+        Iterator<InputParserProvider> providers = ServiceLoader.load(InputParserProvider.class).iterator();
+        while (true) {
+            try {
+                if (!providers.hasNext()) {
+                    break;
+                }
+                InputParserProvider provider = providers.next();
+                // discovered providers do not replace the built-in input types
+                inputParserProviders.putIfAbsent(provider.getInputType(), provider);
+            } catch (ServiceConfigurationError e) {
+                // the iterator has moved past the bad entry, so the remaining providers are still loaded
+                System.err.println("Warning: Skipping InputParserProvider - " + e.getLocalizedMessage());
+            }
+        }
+    }
 
     /**
-     * Return an instance of type InteractiveInputParser or JsonFileInputParser based on the input type
+     * Return a new InputParser for an input type
      * @param type the type of input to return an InputParser for
-     * @return instance of InteractiveInputParser if type is 'interactive' or JsonFileInputParser if type is 'jsonfile'
+     * @return instance of InteractiveInputParser if type is 'interactive', JsonFileInputParser if type is 'jsonfile',
+     * PropertiesFileInputParser if type is 'properties', or the InputParser registered for any other type
      * @throws IOException if passed an invalid type
      */
     protected static InputParser getInstance(String type) throws IOException {
@@ -25,41 +93,27 @@ public class InputParserFactory {
             throw new IllegalArgumentException("Input type cannot be null");
         }
 
-        InputParser parser = inputParsersCache.get(type);
-        if (null == parser) {
-            Class<? extends InputParser> inputParserClass = inputParsersClassCache.get(type);
-            if (inputParserClass != null) {
-                Constructor constructor = null;
-                try {
-                    constructor = inputParserClass.getDeclaredConstructor(new Class[]{});
-                } catch (NoSuchMethodException e) {
-                    throw new IllegalStateException(e);
-                }
-                constructor.setAccessible(true);
-                try {
-                    parser = (InputParser) constructor.newInstance();
-                } catch (InstantiationException e) {
-                    throw new IllegalStateException(e);
-                } catch (IllegalAccessException e) {
-                    throw new IllegalStateException(e);
-                } catch (InvocationTargetException e) {
-                    throw new IllegalStateException(e);
-                }
-                inputParsersCache.put(type, parser);
-            }
-            else {
-                throw new IOException("Error: Invalid input type - '" + type + "'.");
-            }
+        InputParserProvider provider = inputParserProviders.get(type);
+        if (null == provider) {
+            throw new IOException("Error: Invalid input type - '" + type + "'.");
         }
-        return parser;
+        return provider.newInputParser();
     }
 
     /**
      * Register an InputParser class
      * @param type the type of this InputParser class
-     * @param classz the InputParser class for this input type
+     * @param classz the InputParser class for this input type. It must have a no-argument constructor.
+     */
+    protected static void registerInputParser(String type, Class<? extends InputParser> classz) {
+        inputParserProviders.put(type, new ReflectiveInputParserProvider(type, classz));
+    }
+
+    /**
+     * Register an InputParserProvider for the input type it provides InputParsers for
+     * @param provider the InputParserProvider to register
      */
-    protected static void registerInputParser(String type, Class classz) {
-        inputParsersClassCache.put(type, classz);
+    protected static void registerInputParserProvider(InputParserProvider provider) {
+        inputParserProviders.put(provider.getInputType(), provider);
     }
 }
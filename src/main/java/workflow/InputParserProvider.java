@@ -0,0 +1,20 @@
+package workflow;
+
+/**
+ * Interface to plug an InputParser for a new input type into InputParserFactory.
+ * Implementations are discovered with java.util.ServiceLoader, so they must have a public no-argument
+ * constructor and be listed in META-INF/services/workflow.InputParserProvider.
+ */
+public interface InputParserProvider {
+
+    /**
+     * @return the input type parsed by the InputParsers this provider creates
+     */
+    public String getInputType();
+
+    /**
+     * Create an InputParser. Each caller gets its own instance, so InputParsers need not be thread-safe.
+     * @return a new InputParser for the input type
+     */
+    public InputParser newInputParser();
+}
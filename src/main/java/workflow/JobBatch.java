@@ -0,0 +1,79 @@
+package workflow;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Class JobBatch
+ * Represents a group of jobs of the same job type within a stage that are launched as a single submission.
+ * A job that is not coalesced with any other job is a batch of size one.
+ */
+public class JobBatch {
+    private String jobType;
+    private List<DependencyGraph.TaskNode> jobs;
+
+    protected JobBatch(String batchJobType) {
+        jobType = batchJobType;
+        jobs = new ArrayList<DependencyGraph.TaskNode>();
+    }
+
+    /**
+     * Add a job to the batch
+     * @param job the job to add to the batch. It must be of the same job type as the batch.
+     */
+    protected void addJob(DependencyGraph.TaskNode job) {
+        if (!jobType.equals(job.getJobType())) {
+            throw new IllegalArgumentException("Job '" + job.getName() + "' of type '" + job.getJobType() +
+                    "' cannot be added to a batch of type '" + jobType + "'");
+        }
+        jobs.add(job);
+    }
+
+    /**
+     * Get the job type shared by all jobs in this batch
+     * @return the job type of this batch
+     */
+    public String getJobType() {
+        return jobType;
+    }
+
+    /**
+     * Get the jobs in this batch
+     * @return list of jobs in this batch
+     */
+    protected List<DependencyGraph.TaskNode> getJobs() {
+        return jobs;
+    }
+
+    /**
+     * Get the names of the jobs in this batch, for BatchRunners to find out which jobs to launch
+     * @return list of the names of the jobs in this batch
+     */
+    public List<String> getJobNames() {
+        List<String> names = new ArrayList<String>(jobs.size());
+        for (DependencyGraph.TaskNode job : jobs) {
+            names.add(job.getName());
+        }
+        return names;
+    }
+
+    /**
+     * Get the number of jobs in this batch
+     * @return the number of jobs in this batch
+     */
+    public int size() {
+        return jobs.size();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(jobType).append(" [");
+        for (int i = 0; i < jobs.size(); i++) {
+            builder.append(jobs.get(i).getName());
+            if (i < jobs.size() - 1) {
+                builder.append(", ");
+            }
+        }
+        return builder.append("]").toString();
+    }
+}
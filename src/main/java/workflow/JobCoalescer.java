@@ -0,0 +1,59 @@
+package workflow;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class JobCoalescer
+ * Planning pass that groups jobs of the same job type within a stage into batches,
+ * so that each batch pays the launch overhead for its job type only once.
+ * Jobs in a stage are independent of each other, so any jobs of the same type in a stage are compatible.
+ */
+public class JobCoalescer {
+
+    private int maxBatchSize;
+
+    /**
+     * @param batchSize the maximum number of jobs in a batch
+     */
+    protected JobCoalescer(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Maximum batch size must be at least 1");
+        }
+        maxBatchSize = batchSize;
+    }
+
+    /**
+     * Group the jobs in a stage into batches of the same job type.
+     * Batches are ordered by the first appearance of their job type in the stage,
+     * and jobs keep their relative order in the stage.
+     * @param stage the stage whose jobs are to be grouped
+     * @return list of batches, each containing at most maxBatchSize jobs
+     */
+    protected List<JobBatch> coalesce(Stage stage) {
+        Map<String, List<DependencyGraph.TaskNode>> jobsByType = new LinkedHashMap<String, List<DependencyGraph.TaskNode>>();
+        for (DependencyGraph.TaskNode job : stage.getAllJobs()) {
+            List<DependencyGraph.TaskNode> jobs = jobsByType.get(job.getJobType());
+            if (null == jobs) {
+                jobs = new ArrayList<DependencyGraph.TaskNode>();
+                jobsByType.put(job.getJobType(), jobs);
+            }
+            jobs.add(job);
+        }
+
+        List<JobBatch> batches = new ArrayList<JobBatch>();
+        for (Map.Entry<String, List<DependencyGraph.TaskNode>> entry : jobsByType.entrySet()) {
+            JobBatch batch = null;
+            for (DependencyGraph.TaskNode job : entry.getValue()) {
+                if (null == batch || batch.size() == maxBatchSize) {
+                    batch = new JobBatch(entry.getKey());
+                    batches.add(batch);
+                }
+                batch.addJob(job);
+            }
+        }
+        return batches;
+    }
+}
@@ -0,0 +1,132 @@
+package workflow;
+
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static workflow.WorkflowUtil.*;
+
+/**
+ * Class JsonTaskReader
+ * Streams tasks one at a time out of the JSON representation of a workflow, without deserializing the whole
+ * document, so that the memory used is bounded by the size of a single task.
+ * The input may contain several JSON documents one after the other; the tasks of all of them are read in order.
+ */
+public class JsonTaskReader {
+
+    /**
+     * JsonFactory is thread-safe, so a single instance is shared by all readers
+     */
+    private static final JsonFactory factory = new JsonFactory();
+
+    private JsonParser parser = null;
+    private boolean inDocument = false;
+    private boolean inTasks = false;
+    private boolean inTask = false;
+
+    /**
+     * @param in the stream to read the JSON representation of a workflow from
+     * @throws IOException if the stream cannot be read
+     */
+    protected JsonTaskReader(InputStream in) throws IOException {
+        parser = factory.createJsonParser(in);
+    }
+
+    /**
+     * Read the next task
+     * @return the next task, or null if there are no more tasks
+     * @throws IOException if the stream cannot be read or does not contain valid JSON
+     */
+    protected DependencyGraph.TaskNode next() throws IOException {
+        while (true) {
+            JsonToken token = parser.nextToken();
+            if (inTask) {
+                if (token == JsonToken.FIELD_NAME) {
+                    return readTask(parser.getCurrentName());
+                }
+                inTask = false;
+            }
+            else if (inTasks) {
+                if (token == JsonToken.START_OBJECT) {
+                    inTask = true;
+                }
+                else if (token == JsonToken.END_ARRAY) {
+                    inTasks = false;
+                }
+                else {
+                    throw new IllegalArgumentException("Each entry in '" + JSON_KEYS.tasks + "' must be a JSON object");
+                }
+            }
+            else if (inDocument) {
+                if (token == JsonToken.FIELD_NAME) {
+                    String field = parser.getCurrentName();
+                    token = parser.nextToken();
+                    if (field.equals(JSON_KEYS.tasks.toString()) && token == JsonToken.START_ARRAY) {
+                        inTasks = true;
+                    }
+                    else {
+                        parser.skipChildren();
+                    }
+                }
+                else {
+                    inDocument = false;
+                }
+            }
+            else if (null == token) {
+                return null;
+            }
+            else if (token == JsonToken.START_OBJECT) {
+                inDocument = true;
+            }
+            else {
+                throw new IllegalArgumentException("Expected a JSON object containing '" + JSON_KEYS.tasks + "'");
+            }
+        }
+    }
+
+    /**
+     * Read the metadata of a task. The parser is positioned on the name of the task.
+     * @param taskName the name of the task
+     * @return a TaskNode for the task
+     */
+    private DependencyGraph.TaskNode readTask(String taskName) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IllegalArgumentException("Metadata for job '" + taskName + "' must be a JSON object");
+        }
+        String taskType = null;
+        List<String> dependencies = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if (field.equals(JSON_KEYS.job_type.toString()) && token == JsonToken.VALUE_STRING) {
+                taskType = parser.getText();
+            }
+            else if (field.equals(JSON_KEYS.depends_on.toString()) && token == JsonToken.START_ARRAY) {
+                dependencies = new ArrayList<String>();
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    dependencies.add(parser.getText());
+                }
+            }
+            else {
+                parser.skipChildren();
+            }
+        }
+        if (null == taskType) {
+            throw new IllegalStateException("Job Type cannot be null");
+        }
+        return new DependencyGraph.TaskNode(taskName, dependencies, taskType);
+    }
+
+    /**
+     * Close the reader and the underlying stream
+     * @throws IOException if the stream cannot be closed
+     */
+    protected void close() throws IOException {
+        parser.close();
+    }
+}
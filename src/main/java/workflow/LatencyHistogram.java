@@ -0,0 +1,93 @@
+package workflow;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Class LatencyHistogram
+ * Lock-free histogram of latencies, safe to record to from many threads at once.
+ * Latencies are counted in power-of-two buckets of microseconds, so percentiles are accurate to within a factor of 2.
+ */
+public class LatencyHistogram {
+
+    private static final int BUCKETS = 64;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    /**
+     * Record a latency
+     * @param nanos the latency in nanoseconds
+     */
+    protected void record(long nanos) {
+        long micros = Math.max(TimeUnit.NANOSECONDS.toMicros(nanos), 0);
+        buckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(micros));
+        count.incrementAndGet();
+        totalMicros.addAndGet(micros);
+        long max = maxMicros.get();
+        while (micros > max && !maxMicros.compareAndSet(max, micros)) {
+            max = maxMicros.get();
+        }
+    }
+
+    protected long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return the mean latency in milliseconds, or 0 if nothing has been recorded
+     */
+    protected long getMeanMillis() {
+        long n = count.get();
+        return n == 0 ? 0 : TimeUnit.MICROSECONDS.toMillis(totalMicros.get() / n);
+    }
+
+    /**
+     * @return the maximum latency in milliseconds
+     */
+    protected long getMaxMillis() {
+        return TimeUnit.MICROSECONDS.toMillis(maxMicros.get());
+    }
+
+    /**
+     * Get an upper bound for a percentile of the recorded latencies
+     * @param percentile the percentile, between 0 and 100
+     * @return the upper bound of the bucket holding the percentile in milliseconds, or 0 if nothing has been recorded
+     */
+    protected long getPercentileMillis(double percentile) {
+        return TimeUnit.MICROSECONDS.toMillis(getPercentileMicros(percentile));
+    }
+
+    /**
+     * Get an upper bound for a percentile of the recorded latencies
+     * @param percentile the percentile, between 0 and 100
+     * @return the upper bound of the bucket holding the percentile in microseconds, or 0 if nothing has been recorded
+     */
+    protected long getPercentileMicros(double percentile) {
+        long n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile / 100 * n);
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += buckets.get(bucket);
+            if (seen >= rank) {
+                return bucket == 0 ? 0 : Math.min((1L << bucket) - 1, maxMicros.get());
+            }
+        }
+        return maxMicros.get();
+    }
+
+    /**
+     * @return a compact summary of the histogram, e.g. "n=12 p50=40ms p95=300ms max=512ms"
+     */
+    @Override
+    public String toString() {
+        return "n=" + getCount() + " p50=" + getPercentileMillis(50) + "ms p95=" + getPercentileMillis(95) +
+                "ms max=" + getMaxMillis() + "ms";
+    }
+}
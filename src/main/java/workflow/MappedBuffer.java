@@ -0,0 +1,147 @@
+package workflow;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Class MappedBuffer
+ * A growable buffer backed by a memory-mapped file, addressed by long offsets so that it can exceed 2GB.
+ * The file is mapped in fixed-size segments as it grows. Only the pages being accessed need to be resident,
+ * so the buffer can be much larger than the heap.
+ * Ints and longs must be stored at offsets aligned to their size.
+ * The backing file is a scratch file: it is unmapped and deleted when the buffer is closed.
+ */
+public class MappedBuffer {
+
+    private static final int SEGMENT_SHIFT = 26;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    private File path = null;
+    private RandomAccessFile file = null;
+    private List<MappedByteBuffer> segments = new ArrayList<MappedByteBuffer>();
+
+    /**
+     * Create a buffer backed by a new, empty file
+     * @param backingFile the file to map. Any existing content is discarded.
+     * @throws IOException if the file cannot be created
+     */
+    protected MappedBuffer(File backingFile) throws IOException {
+        path = backingFile;
+        file = new RandomAccessFile(backingFile, "rw");
+        file.setLength(0);
+    }
+
+    protected int getInt(long offset) {
+        return segment(offset).getInt((int) (offset & SEGMENT_MASK));
+    }
+
+    protected void putInt(long offset, int value) throws IOException {
+        ensureCapacity(offset + 4);
+        segment(offset).putInt((int) (offset & SEGMENT_MASK), value);
+    }
+
+    protected long getLong(long offset) {
+        return segment(offset).getLong((int) (offset & SEGMENT_MASK));
+    }
+
+    protected void putLong(long offset, long value) throws IOException {
+        ensureCapacity(offset + 8);
+        segment(offset).putLong((int) (offset & SEGMENT_MASK), value);
+    }
+
+    /**
+     * Read bytes, which may span segments
+     */
+    protected void getBytes(long offset, byte[] dst) {
+        int copied = 0;
+        while (copied < dst.length) {
+            MappedByteBuffer segment = segment(offset + copied);
+            int position = (int) ((offset + copied) & SEGMENT_MASK);
+            int length = Math.min(dst.length - copied, SEGMENT_SIZE - position);
+            ByteBuffer view = segment.duplicate();
+            view.position(position);
+            view.get(dst, copied, length);
+            copied += length;
+        }
+    }
+
+    /**
+     * Write bytes, which may span segments
+     */
+    protected void putBytes(long offset, byte[] src) throws IOException {
+        ensureCapacity(offset + src.length);
+        int copied = 0;
+        while (copied < src.length) {
+            MappedByteBuffer segment = segment(offset + copied);
+            int position = (int) ((offset + copied) & SEGMENT_MASK);
+            int length = Math.min(src.length - copied, SEGMENT_SIZE - position);
+            ByteBuffer view = segment.duplicate();
+            view.position(position);
+            view.put(src, copied, length);
+            copied += length;
+        }
+    }
+
+    /**
+     * Release the mappings, then close and delete the backing file.
+     * The buffer must not be accessed once it is closed.
+     * @throws IOException if the file cannot be closed
+     */
+    protected void close() throws IOException {
+        for (MappedByteBuffer segment : segments) {
+            unmap(segment);
+        }
+        segments.clear();
+        file.close();
+        if (!path.delete() && path.exists()) {
+            throw new WorkflowException("Error: Could not delete working file '" + path + "'.");
+        }
+    }
+
+    /**
+     * Release a mapping right away instead of when the buffer is garbage collected, which may be never.
+     * There is no public API for this, so the JDK internals are used where available.
+     */
+    private static void unmap(MappedByteBuffer segment) {
+        try {
+            // Java 9 and later
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), segment);
+        } catch (NoSuchMethodException e) {
+            try {
+                // Java 8 and earlier
+                Method cleanerMethod = segment.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(segment);
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            } catch (Exception unavailable) {
+                // the mapping is released when the segment is garbage collected
+            }
+        } catch (Exception unavailable) {
+            // the mapping is released when the segment is garbage collected
+        }
+    }
+
+    private MappedByteBuffer segment(long offset) {
+        return segments.get((int) (offset >>> SEGMENT_SHIFT));
+    }
+
+    private void ensureCapacity(long capacity) throws IOException {
+        while ((long) segments.size() << SEGMENT_SHIFT < capacity) {
+            long start = (long) segments.size() << SEGMENT_SHIFT;
+            segments.add(file.getChannel().map(FileChannel.MapMode.READ_WRITE, start, SEGMENT_SIZE));
+        }
+    }
+}
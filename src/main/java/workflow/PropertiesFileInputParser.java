@@ -1,9 +1,8 @@
 package workflow;
 
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
@@ -18,6 +17,8 @@ import java.util.Properties;
  * task3.job_type = Map Reduce
  * task3.depends_on = task1, task2
  * {code}
+ * The file may be gzip-compressed and split into several chunk files (see ChunkedInput), which are loaded in parallel.
+ * The tasks listed in all chunks are added in the order of the chunks, and a task may be defined in any chunk.
  */
 public class PropertiesFileInputParser implements InputParser {
 
@@ -30,20 +31,57 @@ public class PropertiesFileInputParser implements InputParser {
         private static final String TASK_TYPE_KEY_SUFFIX = ".job_type";
     }
 
+    /**
+     * Loads the properties of a chunk of a properties file
+     */
+    private static final ChunkedInput.ChunkParser<Properties> chunkParser = new ChunkedInput.ChunkParser<Properties>() {
+        @Override
+        public Properties parse(InputStream in) throws IOException {
+            Properties properties = new Properties();
+            properties.load(in);
+            return properties;
+        }
+    };
+
     /**
      * Read a properties file as an argument and return a DependencyGraph for it
-     * @param inputSource path to the properties file containing input data
+     * @param inputSource path to the properties file containing input data,
+     *                    or a comma separated list of paths to the chunks of the file
      * @return the DependencyGraph representing data in the properties file
      * @throws IOException if an invalid number of arguments is passed
      */
     @Override
     public DependencyGraph parse(String inputSource) throws IOException {
         validate(inputSource);
-        InputStream in = new FileInputStream(new File(inputSource));
-        Properties properties = new Properties();
-        properties.load(in);
-        in.close();
-        return buildDependencyGraph(properties);
+        List<Properties> chunks = ChunkedInput.parse(inputSource, chunkParser);
+        if (chunks.size() == 1) {
+            return buildDependencyGraph(chunks.get(0));
+        }
+        return buildDependencyGraph(merge(chunks));
+    }
+
+    /**
+     * Merge the properties of all chunks of a properties file into one, concatenating their lists of tasks
+     * @param chunks the properties of every chunk, in the order of the chunks
+     * @return the merged properties
+     */
+    private Properties merge(List<Properties> chunks) {
+        Properties merged = new Properties();
+        List<String> tasks = new ArrayList<String>();
+        for (Properties chunk : chunks) {
+            if (chunk.containsKey(PropertiesKeys.TASKS_KEY)) {
+                tasks.add(chunk.getProperty(PropertiesKeys.TASKS_KEY));
+            }
+            merged.putAll(chunk);
+        }
+        if (!tasks.isEmpty()) {
+            StringBuilder allTasks = new StringBuilder();
+            for (String chunkTasks : tasks) {
+                allTasks.append(allTasks.length() == 0 ? "" : ", ").append(chunkTasks);
+            }
+            merged.setProperty(PropertiesKeys.TASKS_KEY, allTasks.toString());
+        }
+        return merged;
     }
 
     /**
@@ -0,0 +1,253 @@
+package workflow;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Class RuntimeHistoryStore
+ * Local store of the actual runtimes of jobs across runs, used to learn how long each job takes.
+ * Every runtime is appended to a log file, and exponentially weighted estimates are kept per task
+ * (keyed by task name and job type) and per job type.
+ * The estimates are saved to a compact index file on close, so that opening the store only needs to replay
+ * the part of the log written after the index was last saved.
+ */
+public class RuntimeHistoryStore {
+
+    private static final String LOG_FILE = "runtimes.log";
+    private static final String INDEX_FILE = "runtimes.idx";
+    private static final double DEFAULT_SMOOTHING = 0.3;
+
+    /**
+     * Exponentially weighted estimate of a runtime
+     */
+    private static class Estimate {
+        private double millis;
+
+        private Estimate(double estimateMillis) {
+            millis = estimateMillis;
+        }
+    }
+
+    private File logFile = null;
+    private File indexFile = null;
+    private double smoothing;
+    private Map<String, Estimate> taskEstimates = new HashMap<String, Estimate>();
+    private Map<String, Estimate> typeEstimates = new HashMap<String, Estimate>();
+    private DataOutputStream log = null;
+
+    /**
+     * Open the store in a directory, creating it if needed
+     * @param directory the directory holding the log and index files
+     * @throws IOException if the store cannot be read or created
+     */
+    public RuntimeHistoryStore(File directory) throws IOException {
+        this(directory, DEFAULT_SMOOTHING);
+    }
+
+    /**
+     * Open the store in a directory, creating it if needed
+     * @param directory the directory holding the log and index files
+     * @param smoothingFactor weight of the latest runtime in the estimates, between 0 (exclusive) and 1 (inclusive)
+     * @throws IOException if the store cannot be read or created
+     */
+    public RuntimeHistoryStore(File directory, double smoothingFactor) throws IOException {
+        if (smoothingFactor <= 0 || smoothingFactor > 1) {
+            throw new IllegalArgumentException("Smoothing factor must be in (0, 1]");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new WorkflowException("Error: Could not create runtime history directory '" + directory + "'.");
+        }
+        smoothing = smoothingFactor;
+        logFile = new File(directory, LOG_FILE);
+        indexFile = new File(directory, INDEX_FILE);
+        long replayFrom = loadIndex();
+        long logLength = replayLog(replayFrom);
+        truncateLog(logLength);
+        log = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(logFile, true)));
+    }
+
+    /**
+     * Record the actual runtime of a job
+     * @param taskName the name of the task
+     * @param jobType the job type of the task
+     * @param runtimeMillis the time the job took to run in milliseconds
+     * @throws IOException if the runtime cannot be appended to the log
+     */
+    public synchronized void record(String taskName, String jobType, long runtimeMillis) throws IOException {
+        log.writeUTF(taskName);
+        log.writeUTF(jobType);
+        log.writeLong(runtimeMillis);
+        log.flush();
+        update(taskName, jobType, runtimeMillis);
+    }
+
+    /**
+     * Get the estimated runtime of a task.
+     * Falls back to the estimate for its job type if the task itself has never been run.
+     * @param task the task to estimate
+     * @return the estimated runtime in milliseconds, or -1 if neither the task nor its job type have been run
+     */
+    public synchronized long estimate(DependencyGraph.TaskNode task) {
+        Estimate estimate = taskEstimates.get(taskKey(task.getName(), task.getJobType()));
+        if (null == estimate) {
+            estimate = typeEstimates.get(task.getJobType());
+        }
+        return null == estimate ? -1 : Math.round(estimate.millis);
+    }
+
+    /**
+     * Save the estimates to the index file and close the log
+     * @throws IOException if the index cannot be written
+     */
+    public synchronized void close() throws IOException {
+        log.close();
+        File tmpIndex = new File(indexFile.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpIndex)));
+        try {
+            out.writeLong(logFile.length());
+            writeEstimates(out, taskEstimates);
+            writeEstimates(out, typeEstimates);
+        } finally {
+            out.close();
+        }
+        if (indexFile.exists() && !indexFile.delete() || !tmpIndex.renameTo(indexFile)) {
+            throw new WorkflowException("Error: Could not save runtime history index '" + indexFile + "'.");
+        }
+    }
+
+    private void update(String taskName, String jobType, long runtimeMillis) {
+        update(taskEstimates, taskKey(taskName, jobType), runtimeMillis);
+        update(typeEstimates, jobType, runtimeMillis);
+    }
+
+    private void update(Map<String, Estimate> estimates, String key, long runtimeMillis) {
+        Estimate estimate = estimates.get(key);
+        if (null == estimate) {
+            estimates.put(key, new Estimate(runtimeMillis));
+        }
+        else {
+            estimate.millis = smoothing * runtimeMillis + (1 - smoothing) * estimate.millis;
+        }
+    }
+
+    private String taskKey(String taskName, String jobType) {
+        return jobType + '\u0000' + taskName;
+    }
+
+    /**
+     * Load estimates from the index file
+     * @return the offset in the log up to which the loaded estimates are up to date
+     */
+    private long loadIndex() throws IOException {
+        if (!indexFile.exists()) {
+            return 0;
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+        try {
+            long indexedLength = in.readLong();
+            if (indexedLength > logFile.length()) {
+                // the log was replaced after the index was written. Rebuild everything from the log.
+                return 0;
+            }
+            readEstimates(in, taskEstimates);
+            readEstimates(in, typeEstimates);
+            return indexedLength;
+        } catch (EOFException e) {
+            taskEstimates.clear();
+            typeEstimates.clear();
+            return 0;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Apply runtimes appended to the log after an offset to the estimates
+     * @param offset the offset to start replaying from
+     * @return the length of the log up to the last complete record
+     */
+    private long replayLog(long offset) throws IOException {
+        if (!logFile.exists()) {
+            return 0;
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile)));
+        long position = offset;
+        try {
+            long skipped = 0;
+            while (skipped < offset) {
+                long n = in.skip(offset - skipped);
+                if (n <= 0) {
+                    throw new EOFException();
+                }
+                skipped += n;
+            }
+            while (true) {
+                String taskName = in.readUTF();
+                String jobType = in.readUTF();
+                long runtimeMillis = in.readLong();
+                update(taskName, jobType, runtimeMillis);
+                position += utfLength(taskName) + utfLength(jobType) + 8;
+            }
+        } catch (EOFException e) {
+            return position;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Drop a partially written record at the end of the log, left behind if a previous run was killed mid-write
+     */
+    private void truncateLog(long length) throws IOException {
+        if (logFile.exists() && logFile.length() > length) {
+            FileOutputStream out = new FileOutputStream(logFile, true);
+            try {
+                out.getChannel().truncate(length);
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    private static int utfLength(String s) throws IOException {
+        int length = 2;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F) {
+                length += 1;
+            }
+            else if (c > 0x07FF) {
+                length += 3;
+            }
+            else {
+                length += 2;
+            }
+        }
+        return length;
+    }
+
+    private static void writeEstimates(DataOutputStream out, Map<String, Estimate> estimates) throws IOException {
+        out.writeInt(estimates.size());
+        for (Map.Entry<String, Estimate> entry : estimates.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeDouble(entry.getValue().millis);
+        }
+    }
+
+    private static void readEstimates(DataInputStream in, Map<String, Estimate> estimates) throws IOException {
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            String key = in.readUTF();
+            estimates.put(key, new Estimate(in.readDouble()));
+        }
+    }
+}
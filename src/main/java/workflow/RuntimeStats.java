@@ -0,0 +1,57 @@
+package workflow;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class RuntimeStats
+ * Tracks the distribution of job runtimes per job type during a run of a workflow.
+ * Runtimes are recorded into a lock-free LatencyHistogram per job type, so reading a percentile takes constant time
+ * however many runtimes have been recorded, and percentiles are accurate to within a factor of 2.
+ */
+public class RuntimeStats {
+
+    private ConcurrentHashMap<String, LatencyHistogram> runtimesByType =
+            new ConcurrentHashMap<String, LatencyHistogram>();
+
+    /**
+     * Record the runtime of a job
+     * @param jobType the job type of the job
+     * @param runtimeNanos the time the job took to run in nanoseconds
+     */
+    protected void record(String jobType, long runtimeNanos) {
+        LatencyHistogram runtimes = runtimesByType.get(jobType);
+        if (null == runtimes) {
+            LatencyHistogram added = new LatencyHistogram();
+            runtimes = runtimesByType.putIfAbsent(jobType, added);
+            if (null == runtimes) {
+                runtimes = added;
+            }
+        }
+        runtimes.record(runtimeNanos);
+    }
+
+    /**
+     * Get the number of runtimes recorded for a job type
+     * @param jobType the job type
+     * @return the number of runtimes recorded for the job type
+     */
+    protected int count(String jobType) {
+        LatencyHistogram runtimes = runtimesByType.get(jobType);
+        return null == runtimes ? 0 : (int) runtimes.getCount();
+    }
+
+    /**
+     * Get the 95th percentile of runtimes recorded for a job type
+     * @param jobType the job type
+     * @return an upper bound for the 95th percentile runtime in nanoseconds,
+     * or -1 if no runtimes have been recorded for the job type
+     */
+    protected long percentile95(String jobType) {
+        LatencyHistogram runtimes = runtimesByType.get(jobType);
+        if (null == runtimes || runtimes.getCount() == 0) {
+            return -1;
+        }
+        return TimeUnit.MICROSECONDS.toNanos(runtimes.getPercentileMicros(95));
+    }
+}
@@ -2,6 +2,7 @@ package workflow;
 
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import static workflow.WorkflowUtil.*;
@@ -12,15 +13,24 @@ import static workflow.WorkflowUtil.*;
  * A stage consists of a list of tasks each of whose dependencies have been satisfied and who can be executed in parallel.
  */
 public class Stage {
-    private static final String STAGE = "Stage";
+    protected static final String STAGE = "Stage";
     private String name;
     private List<DependencyGraph.TaskNode> jobsInStage;
+    private List<JobBatch> batches;
 
     protected Stage(int stageNum) {
         name = STAGE + stageNum;
         jobsInStage = new ArrayList<DependencyGraph.TaskNode>();
     }
 
+    /**
+     * Get the name of this stage
+     * @return the name of this stage
+     */
+    public String getName() {
+        return name;
+    }
+
     /**
      * Add a job to the stage
      * @param job the job to add to the stage
@@ -46,6 +56,44 @@ public class Stage {
         return jobsInStage;
     }
 
+    /**
+     * Get the names of all jobs in this stage
+     * @return list of the names of the jobs in this stage, in the order they are launched
+     */
+    public List<String> getJobNames() {
+        List<String> names = new ArrayList<String>(jobsInStage.size());
+        for (DependencyGraph.TaskNode job : jobsInStage) {
+            names.add(job.getName());
+        }
+        return names;
+    }
+
+    /**
+     * Set the batches the jobs in this stage are launched in
+     * @param jobBatches the batches of jobs in this stage, as planned by a JobCoalescer
+     */
+    protected void setBatches(List<JobBatch> jobBatches) {
+        batches = jobBatches;
+    }
+
+    /**
+     * Get the batches the jobs in this stage are launched in.
+     * If the stage has not been coalesced, every job is launched in a batch of its own.
+     * @return list of batches in this stage
+     */
+    public List<JobBatch> getBatches() {
+        if (null != batches) {
+            return Collections.unmodifiableList(batches);
+        }
+        List<JobBatch> singletons = new ArrayList<JobBatch>();
+        for (DependencyGraph.TaskNode job : jobsInStage) {
+            JobBatch batch = new JobBatch(job.getJobType());
+            batch.addJob(job);
+            singletons.add(batch);
+        }
+        return singletons;
+    }
+
     /**
      * Print this stage to a PrintStream
      * @param out the PrintStream to print to
@@ -68,5 +116,15 @@ public class Stage {
             }
             out.println();
         }
+        if (null != batches) {
+            out.print("Batches: ");
+            for (int i = 0; i < batches.size(); i++) {
+                out.print(batches.get(i));
+                if (i < batches.size() - 1) {
+                    out.print(", ");
+                }
+            }
+            out.println();
+        }
     }
 }
@@ -0,0 +1,11 @@
+package workflow;
+
+/**
+ * Thrown by a BatchRunner to signal a failure that is expected to go away if the batch is launched again
+ * (for example, a lost connection or a busy cluster). Batches failing with this exception are retried.
+ */
+public class TransientWorkflowException extends WorkflowException {
+    public TransientWorkflowException(String msg) {
+        super(msg);
+    }
+}
@@ -0,0 +1,21 @@
+package workflow;
+
+/**
+ * Thrown when jobs of a workflow failed during execution.
+ * Carries the ExecutionReport of the jobs that completed, failed and were skipped before the workflow stopped.
+ */
+public class WorkflowExecutionException extends WorkflowException {
+    private ExecutionReport report;
+
+    public WorkflowExecutionException(String msg, ExecutionReport executionReport) {
+        super(msg);
+        report = executionReport;
+    }
+
+    /**
+     * @return the report of the jobs that completed, failed and were skipped
+     */
+    public ExecutionReport getReport() {
+        return report;
+    }
+}
@@ -0,0 +1,552 @@
+package workflow;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Class WorkflowExecutor
+ * Executes a generated workflow stage by stage.
+ * All batches in a stage are launched in parallel through the BatchRunner registered for their job type,
+ * and a stage is started only after every batch in the previous stage has completed.
+ *
+ * To keep a single straggling batch from holding up every downstream stage, speculation can be turned on:
+ * the executor then tracks the runtimes of jobs of each job type during the run, and launches a speculative copy
+ * of a batch that runs far past the 95th percentile runtime of its job type. Whichever copy finishes first is taken
+ * and the other is stopped through BatchRunner.cancel, so BatchRunners must be safe to launch more than once for
+ * the same batch. Speculation is off by default.
+ * Batches failing with a TransientWorkflowException are retried with exponential backoff.
+ * Only the failed batch is launched again; batches that have already completed are never re-run.
+ *
+ * A batch that fails for good does not stop the workflow. Only the jobs that depend on its jobs, directly or
+ * transitively, are skipped; every other batch still runs, including the rest of the failed batch's stage.
+ * The completed, failed and skipped jobs are recorded in an ExecutionReport.
+ * A BatchRunner that fails only some of the jobs in a batch names them with a BatchFailureException: only those
+ * jobs are reported as failed and only their dependents are skipped. Any other error fails every job in the batch.
+ */
+public class WorkflowExecutor {
+
+    /**
+     * A single launch of a batch: the first launch, a retry, or a speculative copy
+     */
+    private static class Attempt implements Runnable {
+        private final BatchState state;
+        private final ExecutionMetrics metrics;
+        private final BlockingQueue<Attempt> completions;
+        private final Set<Attempt> executing;
+        private final boolean queued;
+        private final long dueTime;
+        private final AtomicBoolean claimed = new AtomicBoolean(false);
+        private volatile long startTime = -1;
+        private volatile long endTime = -1;
+        private volatile Throwable error = null;
+        private Future<?> future = null;
+
+        private Attempt(BatchState batchState, ExecutionMetrics executionMetrics, BlockingQueue<Attempt> queue,
+                        Set<Attempt> executingAttempts, long delayMillis) {
+            state = batchState;
+            metrics = executionMetrics;
+            completions = queue;
+            executing = executingAttempts;
+            queued = delayMillis == 0;
+            dueTime = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+        }
+
+        @Override
+        public void run() {
+            if (!claimed.compareAndSet(false, true)) {
+                // cancelled before it started
+                return;
+            }
+            startTime = System.nanoTime();
+            long readyToStart = state.started.compareAndSet(false, true) ? startTime - state.readyTime : -1;
+            metrics.started(state.stage, state.batch, queued, startTime - dueTime, readyToStart);
+            executing.add(this);
+            try {
+                state.runner.run(state.batch);
+            } catch (Throwable t) {
+                error = t;
+            } finally {
+                endTime = System.nanoTime();
+                executing.remove(this);
+                metrics.finished(state.stage, state.batch, endTime - startTime, null == error);
+                completions.offer(this);
+            }
+        }
+
+        private void cancel() {
+            if (claimed.compareAndSet(false, true)) {
+                metrics.cancelled(state.batch.size(), queued);
+            }
+            future.cancel(true);
+        }
+
+        private boolean isStarted() {
+            return startTime >= 0;
+        }
+    }
+
+    /**
+     * Progress of a batch within the stage being executed
+     */
+    private static class BatchState {
+        private final Stage stage;
+        private final JobBatch batch;
+        private final BatchRunner runner;
+        private final long readyTime;
+        private final AtomicBoolean started = new AtomicBoolean(false);
+        private final List<Attempt> running = new ArrayList<Attempt>();
+        private int retries = 0;
+        private boolean speculated = false;
+        private boolean completed = false;
+
+        private BatchState(Stage batchStage, JobBatch jobBatch, BatchRunner batchRunner) {
+            stage = batchStage;
+            batch = jobBatch;
+            runner = batchRunner;
+            readyTime = System.nanoTime();
+        }
+    }
+
+    /**
+     * Dispatches launches to a thread pool owned by the executor
+     */
+    private static class PoolBatchDispatcher implements BatchDispatcher {
+        private final ScheduledExecutorService pool;
+
+        private PoolBatchDispatcher(int numThreads) {
+            pool = Executors.newScheduledThreadPool(numThreads);
+        }
+
+        @Override
+        public Future<?> dispatch(Runnable launch, long delayMillis) {
+            if (delayMillis > 0) {
+                return pool.schedule(launch, delayMillis, TimeUnit.MILLISECONDS);
+            }
+            return pool.submit(launch);
+        }
+
+        private void shutdown() {
+            pool.shutdownNow();
+        }
+    }
+
+    protected static final double DEFAULT_SPECULATION_MULTIPLIER = 0;
+    protected static final int DEFAULT_SPECULATION_MIN_SAMPLES = 5;
+    protected static final int DEFAULT_MAX_RETRIES = 3;
+    protected static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 1000;
+    private static final long POLL_INTERVAL_MILLIS = 100;
+
+    private List<Stage> workflow = null;
+    private int parallelism;
+    private RuntimeStats runtimeStats = null;
+    private RuntimeHistoryStore runtimeHistory = null;
+    private ExecutionMetrics metrics = null;
+    private BatchDispatcher dispatcher = null;
+    private PrintStream metricsLog = null;
+    private long metricsPeriodMillis = 0;
+    private double speculationMultiplier = DEFAULT_SPECULATION_MULTIPLIER;
+    private int speculationMinSamples = DEFAULT_SPECULATION_MIN_SAMPLES;
+    private int maxRetries = DEFAULT_MAX_RETRIES;
+    private long initialBackoffMillis = DEFAULT_INITIAL_BACKOFF_MILLIS;
+    private ExecutionReport report = new ExecutionReport();
+    private List<String> failures = new ArrayList<String>();
+    private Set<String> skippedJobs = new HashSet<String>();
+    private Map<String, List<DependencyGraph.TaskNode>> dependents = null;
+
+    /**
+     * @param stages the workflow to execute
+     * @param numThreads the maximum number of batches to run at the same time
+     */
+    protected WorkflowExecutor(List<Stage> stages, int numThreads) {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        workflow = stages;
+        parallelism = numThreads;
+        runtimeStats = new RuntimeStats();
+        metrics = new ExecutionMetrics(numThreads);
+    }
+
+    /**
+     * Configure speculative re-execution of straggling batches
+     * @param multiplier a batch is a straggler once it runs longer than multiplier times the 95th percentile
+     *                   runtime of its job type (scaled by the number of jobs in the batch).
+     *                   Speculation is disabled if this is not positive, which is the default.
+     * @param minSamples the number of completed jobs of a job type needed before its batches are speculated
+     */
+    protected void setSpeculation(double multiplier, int minSamples) {
+        speculationMultiplier = multiplier;
+        speculationMinSamples = Math.max(minSamples, 1);
+    }
+
+    /**
+     * Configure retries of batches failing with a TransientWorkflowException
+     * @param retries the maximum number of times a batch is retried
+     * @param backoffMillis the delay before the first retry. The delay doubles with every retry.
+     */
+    protected void setRetries(int retries, long backoffMillis) {
+        maxRetries = Math.max(retries, 0);
+        initialBackoffMillis = Math.max(backoffMillis, 0);
+    }
+
+    /**
+     * Record the runtime of every completed job to a store of runtimes learned across runs
+     * @param history the store to record runtimes to
+     */
+    protected void setRuntimeHistory(RuntimeHistoryStore history) {
+        runtimeHistory = history;
+    }
+
+    /**
+     * Print the execution metrics as a compact log line periodically while the workflow runs
+     * @param out the PrintStream to print to
+     * @param periodMillis the time between log lines. Nothing is printed if this is not positive.
+     */
+    protected void setMetricsReporting(PrintStream out, long periodMillis) {
+        metricsLog = out;
+        metricsPeriodMillis = periodMillis;
+    }
+
+    /**
+     * Run batches through a dispatcher shared with other workflows instead of a thread pool of this executor's own
+     * @param batchDispatcher the dispatcher to launch batches through
+     */
+    protected void setDispatcher(BatchDispatcher batchDispatcher) {
+        dispatcher = batchDispatcher;
+    }
+
+    /**
+     * Execute the workflow, issuing one launch per batch.
+     * The execution metrics are registered with JMX while the workflow runs, if the MBean server allows it.
+     * Batches failing for good do not stop the execution; the jobs downstream of them are skipped instead.
+     * @throws WorkflowExecutionException once the workflow has run as far as it can if any batch failed
+     * @throws IOException
+     * or before any batch is launched if there is no BatchRunner for a job type in the workflow
+     */
+    protected void execute() throws IOException {
+        // fail before launching anything rather than after earlier stages have run
+        for (Stage stage : workflow) {
+            for (JobBatch batch : stage.getBatches()) {
+                BatchRunnerFactory.getInstance(batch.getJobType());
+            }
+        }
+        PoolBatchDispatcher ownPool = null;
+        BatchDispatcher pool = dispatcher;
+        if (null == pool) {
+            ownPool = new PoolBatchDispatcher(parallelism);
+            pool = ownPool;
+        }
+        try {
+            metrics.registerMBean();
+            if (null != metricsLog && metricsPeriodMillis > 0) {
+                metrics.startReporting(metricsLog, metricsPeriodMillis);
+            }
+            for (Stage stage : workflow) {
+                executeStage(stage, pool);
+            }
+            if (!failures.isEmpty()) {
+                StringBuilder message = new StringBuilder("Error: ");
+                for (int i = 0; i < failures.size(); i++) {
+                    message.append(i == 0 ? "" : "; ").append(failures.get(i));
+                }
+                if (!skippedJobs.isEmpty()) {
+                    message.append(" (").append(skippedJobs.size()).append(" dependent jobs skipped)");
+                }
+                throw new WorkflowExecutionException(message.toString(), report);
+            }
+        } finally {
+            if (null != ownPool) {
+                ownPool.shutdown();
+            }
+            metrics.stop();
+        }
+    }
+
+    /**
+     * Launch all batches in a stage and wait for them to complete, speculating on stragglers and
+     * retrying transient failures along the way. Jobs downstream of a failed job are left out of their batches.
+     * @param stage the stage to execute
+     * @param pool the dispatcher to launch batches through
+     * @throws IOException if there is no BatchRunner for a job type in the stage
+     */
+    private void executeStage(Stage stage, BatchDispatcher pool) throws IOException {
+        BlockingQueue<Attempt> completions = new LinkedBlockingQueue<Attempt>();
+        // only the attempts running right now can be stragglers, so speculation never scans the queued batches
+        Set<Attempt> executing = Collections.newSetFromMap(new ConcurrentHashMap<Attempt, Boolean>());
+        List<BatchState> states = new ArrayList<BatchState>();
+        for (JobBatch batch : stage.getBatches()) {
+            BatchRunner runner = BatchRunnerFactory.getInstance(batch.getJobType());
+            JobBatch runnable = withoutSkippedJobs(batch);
+            if (runnable.size() > 0) {
+                states.add(new BatchState(stage, runnable, runner));
+            }
+        }
+        for (BatchState state : states) {
+            launch(state, 0, pool, completions, executing);
+        }
+
+        int pending = states.size();
+        try {
+            while (pending > 0) {
+                Attempt attempt = completions.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (null != attempt && handleCompletion(attempt.state, attempt, pool, completions, executing)) {
+                    pending--;
+                }
+                speculateStragglers(executing, pool, completions);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WorkflowException("Error: Interrupted while executing " + stage.getName() + ".");
+        } finally {
+            for (BatchState state : states) {
+                cancelRunning(state);
+            }
+        }
+    }
+
+    /**
+     * Handle a finished attempt of a batch
+     * @return true if the batch has now completed or failed for good, false if it is still pending
+     */
+    private boolean handleCompletion(BatchState state, Attempt attempt, BatchDispatcher pool,
+                                     BlockingQueue<Attempt> completions, Set<Attempt> executing) {
+        state.running.remove(attempt);
+        if (state.completed) {
+            return false;
+        }
+        if (null == attempt.error) {
+            state.completed = true;
+            metrics.completed();
+            report.completed(state.batch);
+            cancelRunning(state);
+            // jobs in a batch are launched as one submission, so each is recorded with the batch average
+            long perJobRuntime = (attempt.endTime - attempt.startTime) / state.batch.size();
+            for (DependencyGraph.TaskNode job : state.batch.getJobs()) {
+                runtimeStats.record(job.getJobType(), perJobRuntime);
+                recordHistory(job, perJobRuntime);
+            }
+            return true;
+        }
+        if (!state.running.isEmpty()) {
+            // another copy of this batch is still running and may yet succeed
+            return false;
+        }
+        if (attempt.error instanceof TransientWorkflowException && state.retries < maxRetries) {
+            long backoff = initialBackoffMillis << state.retries;
+            state.retries++;
+            metrics.retried();
+            launch(state, backoff, pool, completions, executing);
+            return false;
+        }
+        String reason = attempt.error.getLocalizedMessage();
+        List<DependencyGraph.TaskNode> failedJobs = failedJobs(state.batch, attempt.error);
+        JobBatch failed = state.batch;
+        if (failedJobs.size() < state.batch.size()) {
+            failed = new JobBatch(state.batch.getJobType());
+            for (DependencyGraph.TaskNode job : failedJobs) {
+                failed.addJob(job);
+            }
+        }
+        failures.add((failed == state.batch ? "Batch " + failed : "Jobs " + failed + " of batch " + state.batch) +
+                " failed" + (state.retries > 0 ? " after " + state.retries + " retries" : "") + " - " + reason);
+        for (DependencyGraph.TaskNode job : state.batch.getJobs()) {
+            if (failedJobs.contains(job)) {
+                report.failed(job, reason);
+            } else {
+                report.completed(job);
+            }
+        }
+        skipDependents(failedJobs);
+        return true;
+    }
+
+    /**
+     * Get the jobs of a batch that failed with an error
+     * @return the jobs named by a BatchFailureException, or every job in the batch for any other error
+     */
+    private static List<DependencyGraph.TaskNode> failedJobs(JobBatch batch, Throwable error) {
+        if (!(error instanceof BatchFailureException)) {
+            return batch.getJobs();
+        }
+        Set<String> names = new HashSet<String>(((BatchFailureException) error).getFailedJobNames());
+        List<DependencyGraph.TaskNode> failedJobs = new ArrayList<DependencyGraph.TaskNode>();
+        for (DependencyGraph.TaskNode job : batch.getJobs()) {
+            if (names.contains(job.getName())) {
+                failedJobs.add(job);
+            }
+        }
+        // a runner naming none of the jobs of the batch has not said which of them failed
+        return failedJobs.isEmpty() ? batch.getJobs() : failedJobs;
+    }
+
+    /**
+     * Record the runtime of a job to the runtime history, if there is one.
+     * The history only helps planning later runs, so if it cannot be written to (e.g. the disk is full) a warning
+     * is printed and recording is disabled for the rest of the run instead of failing the workflow.
+     */
+    private void recordHistory(DependencyGraph.TaskNode job, long runtimeNanos) {
+        if (null == runtimeHistory) {
+            return;
+        }
+        try {
+            runtimeHistory.record(job.getName(), job.getJobType(), TimeUnit.NANOSECONDS.toMillis(runtimeNanos));
+        } catch (IOException e) {
+            runtimeHistory = null;
+            System.err.println("Warning: Could not record job runtimes to the runtime history, " +
+                    "no more runtimes are recorded in this run - " + e.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Skip every job that depends, directly or transitively, on a failed job
+     */
+    private void skipDependents(List<DependencyGraph.TaskNode> failed) {
+        if (null == dependents) {
+            dependents = new HashMap<String, List<DependencyGraph.TaskNode>>();
+            for (Stage stage : workflow) {
+                for (DependencyGraph.TaskNode job : stage.getAllJobs()) {
+                    if (null == job.getDependencies()) {
+                        continue;
+                    }
+                    for (String dependency : job.getDependencies()) {
+                        List<DependencyGraph.TaskNode> jobs = dependents.get(dependency);
+                        if (null == jobs) {
+                            jobs = new ArrayList<DependencyGraph.TaskNode>();
+                            dependents.put(dependency, jobs);
+                        }
+                        jobs.add(job);
+                    }
+                }
+            }
+        }
+        LinkedList<String> toVisit = new LinkedList<String>();
+        for (DependencyGraph.TaskNode job : failed) {
+            toVisit.add(job.getName());
+        }
+        while (!toVisit.isEmpty()) {
+            List<DependencyGraph.TaskNode> jobs = dependents.get(toVisit.removeFirst());
+            if (null == jobs) {
+                continue;
+            }
+            for (DependencyGraph.TaskNode job : jobs) {
+                if (skippedJobs.add(job.getName())) {
+                    report.skipped(job);
+                    toVisit.add(job.getName());
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the batch without the jobs skipped because a job upstream of them failed
+     */
+    private JobBatch withoutSkippedJobs(JobBatch batch) {
+        if (skippedJobs.isEmpty()) {
+            return batch;
+        }
+        JobBatch runnable = new JobBatch(batch.getJobType());
+        for (DependencyGraph.TaskNode job : batch.getJobs()) {
+            if (!skippedJobs.contains(job.getName())) {
+                runnable.addJob(job);
+            }
+        }
+        return runnable.size() == batch.size() ? batch : runnable;
+    }
+
+    /**
+     * Launch a speculative copy of every batch that has been running far past the
+     * 95th percentile runtime of its job type
+     * @param executing the attempts running right now
+     */
+    private void speculateStragglers(Set<Attempt> executing, BatchDispatcher pool,
+                                     BlockingQueue<Attempt> completions) {
+        if (speculationMultiplier <= 0 || executing.isEmpty()) {
+            return;
+        }
+        long now = System.nanoTime();
+        // the 95th percentile runtime of every job type with enough samples, or -1 if it has too few
+        Map<String, Long> percentiles = new HashMap<String, Long>();
+        for (Attempt attempt : executing) {
+            BatchState state = attempt.state;
+            if (state.completed || state.speculated || state.running.size() != 1) {
+                continue;
+            }
+            String jobType = state.batch.getJobType();
+            Long percentile = percentiles.get(jobType);
+            if (null == percentile) {
+                percentile = runtimeStats.count(jobType) < speculationMinSamples ? -1 :
+                        runtimeStats.percentile95(jobType);
+                percentiles.put(jobType, percentile);
+            }
+            if (percentile >= 0 && now - attempt.startTime > speculationMultiplier * percentile * state.batch.size()) {
+                state.speculated = true;
+                metrics.speculated();
+                launch(state, 0, pool, completions, executing);
+            }
+        }
+    }
+
+    private void launch(BatchState state, long delayMillis, BatchDispatcher pool,
+                        BlockingQueue<Attempt> completions, Set<Attempt> executing) {
+        Attempt attempt = new Attempt(state, metrics, completions, executing, delayMillis);
+        state.running.add(attempt);
+        metrics.launched(state.batch.size(), attempt.queued);
+        attempt.future = pool.dispatch(attempt, delayMillis);
+    }
+
+    private void cancelRunning(BatchState state) {
+        boolean launched = false;
+        for (Attempt attempt : state.running) {
+            launched |= attempt.isStarted();
+            attempt.cancel();
+        }
+        state.running.clear();
+        if (launched) {
+            try {
+                state.runner.cancel(state.batch);
+            } catch (Exception e) {
+                System.err.println("Warning: Could not cancel batch " + state.batch + " - " + e.getLocalizedMessage());
+            }
+        }
+    }
+
+    /**
+     * Get the outcome of the execution so far: the jobs that completed, failed or were skipped
+     * @return the execution report
+     */
+    protected ExecutionReport getReport() {
+        return report;
+    }
+
+    /**
+     * Get the live metrics of the execution
+     * @return the execution metrics
+     */
+    protected ExecutionMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Getter intended to be visible only for testing
+     * @return runtimes recorded during execution
+     */
+    protected RuntimeStats getRuntimeStats() {
+        return runtimeStats;
+    }
+}
@@ -2,7 +2,12 @@ package workflow;
 
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
 
 /**
  * Class WorkflowGenerator
@@ -20,95 +25,112 @@ public class WorkflowGenerator {
     }
 
     /**
-     * Generates a workflow for a given DependencyGraph
+     * Generates a workflow for a given DependencyGraph.
+     * Tasks are always added to the graph after their dependencies, so a single pass over the tasks in order
+     * places each task in the stage after the latest stage of its dependencies.
      */
     protected void generate() {
-        while (moreTasksToSchedule()) {
-            Stage nextStage = new Stage(workflow.size() + 1);
-            for (DependencyGraph.TaskNode node : getUnscheduledTasks()) {
-                if (dependenciesSatisfied(node)) {
-                    schedule(node, nextStage);
+        List<DependencyGraph.TaskNode> tasks = dependencyGraph.getAllTasks();
+        Map<String, Integer> stageOf = new HashMap<String, Integer>(tasks.size() * 4 / 3 + 1);
+        for (DependencyGraph.TaskNode node : tasks) {
+            int stageIndex = 0;
+            List<String> dependencies = dependencyGraph.dependenciesOf(node);
+            if (dependencies != null) {
+                for (String dependency : dependencies) {
+                    stageIndex = Math.max(stageIndex, stageOf.get(dependency) + 1);
                 }
             }
-            workflow.add(nextStage);
+            stageOf.put(node.getName(), stageIndex);
+            while (workflow.size() <= stageIndex) {
+                workflow.add(new Stage(workflow.size() + 1));
+            }
+            schedule(node, workflow.get(stageIndex));
         }
     }
 
     /**
-     * Check if all dependencies for a given task have been scheduled already in prior stages in this workflow
-     * @param node the task whose dependencies are to be checked
-     * @return true if all dependencies have been scheduled already in prior stages, false otherwise
+     * Order the jobs within each stage of the generated workflow by their estimated runtime, longest first,
+     * so that the longest jobs are launched first. Jobs without an estimate are kept after all other jobs
+     * in their original order.
+     * The estimates of a stage are read once before sorting it, so that runtimes recorded to the store
+     * concurrently (e.g. by workflows running at the same time) cannot change the order in the middle of a sort.
+     * @param history the store of runtimes learned from previous runs
      */
-    private boolean dependenciesSatisfied(DependencyGraph.TaskNode node) {
-        List<String> dependencies = dependencyGraph.dependenciesOf(node);
-        if (dependencies != null) {
-            for (String dependency : dependencies) {
-                DependencyGraph.TaskNode dependencyNode = dependencyGraph.getTaskByName(dependency);
-                if (!isScheduled(dependencyNode)) {
-                    return false;
+    protected void orderByEstimates(RuntimeHistoryStore history) {
+        for (Stage stage : workflow) {
+            final Map<DependencyGraph.TaskNode, Long> estimates = estimates(stage.getAllJobs(), history);
+            Collections.sort(stage.getAllJobs(), new Comparator<DependencyGraph.TaskNode>() {
+                @Override
+                public int compare(DependencyGraph.TaskNode first, DependencyGraph.TaskNode second) {
+                    long firstEstimate = estimates.get(first);
+                    long secondEstimate = estimates.get(second);
+                    return firstEstimate < secondEstimate ? 1 : (firstEstimate == secondEstimate ? 0 : -1);
                 }
-            }
+            });
         }
-        return true;
     }
 
     /**
-     * Check if a task has been scheduled in a prior stage in this workflow
-     * @param node the task to check
-     * @return true if the task has been scheduled, false otherwise
+     * Predict the time the generated workflow takes to complete.
+     * Every stage waits for the previous stage to complete. Within a stage, the batches are launched in order,
+     * each on the first thread to become free, and a batch takes the sum of the estimated runtimes of its jobs,
+     * as its jobs are launched as one submission. Call this after coalesce() to account for batching.
+     * @param history the store of runtimes learned from previous runs
+     * @param parallelism the number of batches that run at the same time, or 0 if every batch of a stage
+     *                    runs at once
+     * @return the predicted completion time in milliseconds. Jobs without an estimate do not contribute to it.
      */
-    private boolean isScheduled(DependencyGraph.TaskNode node) {
+    protected long predictCompletionTime(RuntimeHistoryStore history, int parallelism) {
+        long completionTime = 0;
         for (Stage stage : workflow) {
-            if (stage.containsJob(node)) {
-                return true;
+            List<JobBatch> batches = stage.getBatches();
+            int threads = parallelism > 0 ? Math.min(parallelism, batches.size()) : batches.size();
+            PriorityQueue<Long> freeAt = new PriorityQueue<Long>();
+            for (int i = 0; i < threads; i++) {
+                freeAt.add(0L);
             }
+            long stageTime = 0;
+            for (JobBatch batch : batches) {
+                long batchTime = 0;
+                for (DependencyGraph.TaskNode job : batch.getJobs()) {
+                    batchTime += Math.max(history.estimate(job), 0);
+                }
+                long end = freeAt.poll() + batchTime;
+                freeAt.add(end);
+                stageTime = Math.max(stageTime, end);
+            }
+            completionTime += stageTime;
         }
-        return false;
-    }
-
-    /**
-     * Schedule a task by adding it to the current (next) stage of the workflow
-     * @param task the task to schedule
-     * @param stage the stage to schedule the task in
-     */
-    private void schedule(DependencyGraph.TaskNode task, Stage stage) {
-        stage.addJob(task);
+        return completionTime;
     }
 
-    /**
-     * Get all the tasks scheduled in stages prior to the current stage
-     * @return list of tasks scheduled in prior stages
-     */
-    private List<DependencyGraph.TaskNode> getScheduledTasks() {
-        List<DependencyGraph.TaskNode> scheduled = new ArrayList<DependencyGraph.TaskNode>();
-        for (Stage stage : workflow) {
-            scheduled.addAll(stage.getAllJobs());
+    private static Map<DependencyGraph.TaskNode, Long> estimates(List<DependencyGraph.TaskNode> jobs,
+                                                                 RuntimeHistoryStore history) {
+        Map<DependencyGraph.TaskNode, Long> estimates = new HashMap<DependencyGraph.TaskNode, Long>();
+        for (DependencyGraph.TaskNode job : jobs) {
+            estimates.put(job, history.estimate(job));
         }
-        return scheduled;
+        return estimates;
     }
 
     /**
-     * Return tasks that have not been scheduled so far
-     * @return list of tasks that have not been scheduled so far
+     * Group jobs of the same job type in each stage of the generated workflow into batches
+     * @param maxBatchSize the maximum number of jobs in a batch
      */
-    private List<DependencyGraph.TaskNode> getUnscheduledTasks() {
-        List<DependencyGraph.TaskNode> allTasks = dependencyGraph.getAllTasks();
-        List<DependencyGraph.TaskNode> scheduled = getScheduledTasks();
-        List<DependencyGraph.TaskNode> unscheduled = new ArrayList<DependencyGraph.TaskNode>();
-        for (DependencyGraph.TaskNode task : allTasks) {
-            if (!scheduled.contains(task)) {
-                unscheduled.add(task);
-            }
+    protected void coalesce(int maxBatchSize) {
+        JobCoalescer coalescer = new JobCoalescer(maxBatchSize);
+        for (Stage stage : workflow) {
+            stage.setBatches(coalescer.coalesce(stage));
         }
-        return unscheduled;
     }
 
     /**
-     * Check if there are pending/unscheduled tasks
-     * @return true if there are more unscheduled tasks, false otherwise
+     * Schedule a task by adding it to the current (next) stage of the workflow
+     * @param task the task to schedule
+     * @param stage the stage to schedule the task in
      */
-    private boolean moreTasksToSchedule() {
-        return getUnscheduledTasks().size() > 0;
+    private void schedule(DependencyGraph.TaskNode task, Stage stage) {
+        stage.addJob(task);
     }
 
     /**
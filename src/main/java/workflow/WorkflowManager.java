@@ -1,5 +1,6 @@
 package workflow;
 
+import java.io.File;
 import java.io.IOException;
 
 import static workflow.WorkflowUtil.*;
@@ -7,36 +8,310 @@ import static workflow.WorkflowUtil.*;
 /**
  * Class WorkflowManager.
  * This is the API that is exposed to users.
- * Users can execute the 'execute' method from this class to generate a workflow.
+ * Users can execute the 'execute' method from this class to generate and print a workflow,
+ * the 'plan' method to generate a workflow without printing it, and the 'run' method to generate and execute it.
+ * The 'plan' and 'run' methods are safe to call concurrently from multiple threads.
  */
 public class WorkflowManager {
 
-    static {
-        InputParserFactory.registerInputParser(JSON_FILE_INPUT_TYPE, JsonFileInputParser.class);
-        InputParserFactory.registerInputParser(INTERACTIVE_INPUT_TYPE, InteractiveInputParser.class);
-        InputParserFactory.registerInputParser(PROPERTIES_FILE_INPUT_TYPE, PropertiesFileInputParser.class);
-    }
-
     /**
-     * This is the only API exposed to users of this tool.
+     * Generates and prints a workflow.
      * Sample usage can be found in WorkflowRunner#main()
      * @param inputType the type of input to parse (mandatory)
      * @param inputSource source for input data (optional)
      * @throws IOException if there are problems while generating the workflow
      */
     public static void execute(String inputType, String inputSource) throws IOException {
-        InputParser parser = InputParserFactory.getInstance(inputType);
-        DependencyGraph graph = parser.parse(inputSource);
-        generateWorkflow(graph);
+        execute(inputType, inputSource, 1);
+    }
+
+    /**
+     * Generates and prints a workflow, grouping jobs of the same job type in each stage into batches
+     * @param inputType the type of input to parse (mandatory)
+     * @param inputSource source for input data (optional)
+     * @param maxBatchSize the maximum number of jobs in a batch. Jobs are not grouped if this is 1.
+     * @throws IOException if there are problems while generating the workflow
+     */
+    public static void execute(String inputType, String inputSource, int maxBatchSize) throws IOException {
+        execute(inputType, inputSource, maxBatchSize, null);
+    }
+
+    /**
+     * Generates and prints a workflow, using job runtimes learned from previous runs to order the jobs
+     * within each stage (longest first) and to predict the time the workflow takes to complete
+     * @param inputType the type of input to parse (mandatory)
+     * @param inputSource source for input data (optional)
+     * @param maxBatchSize the maximum number of jobs in a batch. Jobs are not grouped if this is 1.
+     * @param historyDirectory directory of the store of learned runtimes (optional)
+     * @throws IOException if there are problems while generating the workflow
+     */
+    public static void execute(String inputType, String inputSource, int maxBatchSize, File historyDirectory)
+            throws IOException {
+        execute(inputType, inputSource, maxBatchSize, historyDirectory, false);
     }
 
     /**
-     * Given a DependencyGraph, generates a workflow for it
-     * @param graph the DependencyGraph to generate a workflow for
+     * Generates and prints a workflow, followed by an analysis of the shape of its graph if requested
+     * @param inputType the type of input to parse (mandatory)
+     * @param inputSource source for input data (optional)
+     * @param maxBatchSize the maximum number of jobs in a batch. Jobs are not grouped if this is 1.
+     * @param historyDirectory directory of the store of learned runtimes (optional)
+     * @param printAnalysis true to print a GraphReport after the stages
+     * @throws IOException if there are problems while generating the workflow
      */
-    private static void generateWorkflow(DependencyGraph graph) {
+    public static void execute(String inputType, String inputSource, int maxBatchSize, File historyDirectory,
+                               boolean printAnalysis) throws IOException {
+        RuntimeHistoryStore history = null == historyDirectory ? null : new RuntimeHistoryStore(historyDirectory);
+        try {
+            InputParser parser = InputParserFactory.getInstance(inputType);
+            DependencyGraph graph = parser.parse(inputSource);
+            plan(graph, maxBatchSize, history, 0).print(System.out);
+            if (printAnalysis) {
+                new GraphAnalyzer(graph).analyze().print(System.out);
+            }
+        } finally {
+            if (null != history) {
+                history.close();
+            }
+        }
+    }
+
+    /**
+     * Generates and prints a workflow for a graph too large to hold on the heap.
+     * The graph and all state used to generate the workflow are kept in memory-mapped files in a work directory,
+     * and the JSON input is streamed one task at a time, so heap usage stays bounded regardless of graph size.
+     * Its chunks (see ChunkedInput) are read one after the other.
+     * Only input type 'jsonfile' is supported.
+     * @param inputType the type of input to parse (mandatory)
+     * @param inputSource source for input data (mandatory)
+     * @param workDirectory directory on local disk for the memory-mapped files
+     * @throws IOException if there are problems while generating the workflow
+     */
+    public static void executeOutOfCore(String inputType, String inputSource, File workDirectory) throws IOException {
+        if (!JSON_FILE_INPUT_TYPE.equals(inputType)) {
+            throw new WorkflowException("Error: Input type '" + inputType + "' cannot be used to generate " +
+                    "a workflow out of core. Please use '" + JSON_FILE_INPUT_TYPE + "'.");
+        }
+        if (null == inputSource) {
+            throw new IOException("Input type 'jsonfile' needs the path to the json file as the second argument");
+        }
+        ExternalDependencyGraph graph = new ExternalDependencyGraph(workDirectory);
+        ExternalWorkflowGenerator generator = new ExternalWorkflowGenerator(graph);
+        try {
+            for (String chunk : ChunkedInput.chunks(inputSource)) {
+                JsonTaskReader reader = new JsonTaskReader(ChunkedInput.open(chunk));
+                try {
+                    for (DependencyGraph.TaskNode task = reader.next(); null != task; task = reader.next()) {
+                        graph.addTask(task);
+                    }
+                } finally {
+                    reader.close();
+                }
+            }
+            generator.generate();
+            generator.print(System.out);
+        } finally {
+            generator.close();
+            graph.close();
+        }
+    }
+
+    /**
+     * Generates a workflow and returns it instead of printing it.
+     * This method may be called concurrently from multiple threads.
+     * @param inputType the type of input to parse (mandatory)
+     * @param inputSource source for input data (optional)
+     * @return the generated workflow
+     * @throws IOException if there are problems while generating the workflow
+     */
+    public static WorkflowPlan plan(String inputType, String inputSource) throws IOException {
+        return plan(inputType, inputSource, 1, null);
+    }
+
+    /**
+     * Generates a workflow and returns it instead of printing it.
+     * This method may be called concurrently from multiple threads, which may share a RuntimeHistoryStore.
+     * @param inputType the type of input to parse (mandatory)
+     * @param inputSource source for input data (optional)
+     * @param maxBatchSize the maximum number of jobs in a batch. Jobs are not grouped if this is 1.
+     * @param history the store of learned runtimes to order jobs by and predict completion time with (optional)
+     * @return the generated workflow
+     * @throws IOException if there are problems while generating the workflow
+     */
+    public static WorkflowPlan plan(String inputType, String inputSource, int maxBatchSize,
+                                    RuntimeHistoryStore history) throws IOException {
+        return plan(inputType, inputSource, maxBatchSize, history, 0);
+    }
+
+    /**
+     * Generates a workflow and returns it instead of printing it, predicting its completion time for a pool of
+     * the given size.
+     * This method may be called concurrently from multiple threads, which may share a RuntimeHistoryStore.
+     * @param inputType the type of input to parse (mandatory)
+     * @param inputSource source for input data (optional)
+     * @param maxBatchSize the maximum number of jobs in a batch. Jobs are not grouped if this is 1.
+     * @param history the store of learned runtimes to order jobs by and predict completion time with (optional)
+     * @param parallelism the maximum number of batches the workflow will run at the same time,
+     *                    or 0 to predict as if every batch of a stage ran at once
+     * @return the generated workflow
+     * @throws IOException if there are problems while generating the workflow
+     */
+    public static WorkflowPlan plan(String inputType, String inputSource, int maxBatchSize,
+                                    RuntimeHistoryStore history, int parallelism) throws IOException {
+        InputParser parser = InputParserFactory.getInstance(inputType);
+        return plan(parser.parse(inputSource), maxBatchSize, history, parallelism);
+    }
+
+    private static WorkflowPlan plan(DependencyGraph graph, int maxBatchSize, RuntimeHistoryStore history,
+                                     int parallelism) throws IOException {
         WorkflowGenerator generator = new WorkflowGenerator(graph);
         generator.generate();
-        generator.print(System.out);
+        if (null != history) {
+            generator.orderByEstimates(history);
+        }
+        if (maxBatchSize > 1) {
+            generator.coalesce(maxBatchSize);
+        }
+        long predictedCompletionTime = -1;
+        if (null != history) {
+            predictedCompletionTime = generator.predictCompletionTime(history, parallelism);
+        }
+        return new WorkflowPlan(generator.getWorkflow(), predictedCompletionTime);
+    }
+
+    /**
+     * Analyzes the shape of the graph of a workflow without generating the workflow: its depth, the number of tasks
+     * and the mix of job types in every stage, fan-in and fan-out histograms, its longest chains of dependencies
+     * and its weakly connected components. The analysis takes time linear in the size of the graph.
+     * This method may be called concurrently from multiple threads.
+     * @param inputType the type of input to parse (mandatory)
+     * @param inputSource source for input data (optional)
+     * @return the report of the analysis
+     * @throws IOException if there are problems while parsing the input
+     */
+    public static GraphReport analyze(String inputType, String inputSource) throws IOException {
+        InputParser parser = InputParserFactory.getInstance(inputType);
+        return new GraphAnalyzer(parser.parse(inputSource)).analyze();
+    }
+
+    /**
+     * Generates, prints and executes a workflow.
+     * Each batch is launched through the BatchRunner registered for its job type.
+     * @param inputType the type of input to parse (mandatory)
+     * @param inputSource source for input data (optional)
+     * @param maxBatchSize the maximum number of jobs in a batch. Jobs are not grouped if this is 1.
+     * @param parallelism the maximum number of batches to run at the same time
+     * @throws IOException if there are problems while generating or executing the workflow
+     */
+    public static void run(String inputType, String inputSource, int maxBatchSize, int parallelism) throws IOException {
+        run(inputType, inputSource, maxBatchSize, parallelism, null);
+    }
+
+    /**
+     * Generates, prints and executes a workflow, recording the runtime of every job to a store of learned runtimes.
+     * The runtimes learned from previous runs are used to order the jobs within each stage (longest first)
+     * and to predict the time the workflow takes to complete.
+     * @param inputType the type of input to parse (mandatory)
+     * @param inputSource source for input data (optional)
+     * @param maxBatchSize the maximum number of jobs in a batch. Jobs are not grouped if this is 1.
+     * @param parallelism the maximum number of batches to run at the same time
+     * @param historyDirectory directory of the store of learned runtimes (optional)
+     * @throws IOException if there are problems while generating or executing the workflow
+     */
+    public static void run(String inputType, String inputSource, int maxBatchSize, int parallelism,
+                           File historyDirectory) throws IOException {
+        RuntimeHistoryStore history = null == historyDirectory ? null : new RuntimeHistoryStore(historyDirectory);
+        try {
+            WorkflowPlan plan = plan(inputType, inputSource, maxBatchSize, history, parallelism);
+            plan.print(System.out);
+            run(plan, parallelism, history).print(System.out);
+        } catch (WorkflowExecutionException e) {
+            e.getReport().print(System.out);
+            throw e;
+        } finally {
+            if (null != history) {
+                history.close();
+            }
+        }
+    }
+
+    /**
+     * Executes a generated workflow.
+     * A job failing does not stop the workflow: only the jobs downstream of it are skipped. Once the workflow has
+     * run as far as it can, a WorkflowExecutionException carrying the report of the completed, failed and skipped
+     * jobs is thrown.
+     * This method may be called concurrently from multiple threads; every call runs on its own thread pool.
+     * @param plan the workflow to execute
+     * @param parallelism the maximum number of batches to run at the same time
+     * @param history the store of learned runtimes to record job runtimes to (optional)
+     * @return the report of the completed jobs
+     * @throws WorkflowExecutionException if any job failed
+     * @throws IOException if there are problems while executing the workflow
+     */
+    public static ExecutionReport run(WorkflowPlan plan, int parallelism, RuntimeHistoryStore history)
+            throws IOException {
+        return run(plan, parallelism, history, 0);
+    }
+
+    /**
+     * Executes a generated workflow, printing its live execution metrics (per job type latencies, ready jobs
+     * and pool utilization) to System.err periodically. The metrics are also exposed through JMX under
+     * "workflow:type=ExecutionMetrics,name=[n]" while the workflow runs, where n is a number unique to each run,
+     * so that concurrent runs do not collide. Query for "workflow:type=ExecutionMetrics,*" to find them.
+     * This method may be called concurrently from multiple threads; every call runs on its own thread pool.
+     * @param plan the workflow to execute
+     * @param parallelism the maximum number of batches to run at the same time
+     * @param history the store of learned runtimes to record job runtimes to (optional)
+     * @param metricsPeriodMillis the time between metrics log lines. No metrics are printed if this is 0.
+     * @return the report of the completed jobs
+     * @throws WorkflowExecutionException if any job failed, carrying the report of completed, failed and skipped jobs
+     * @throws IOException if there are problems while executing the workflow
+     */
+    public static ExecutionReport run(WorkflowPlan plan, int parallelism, RuntimeHistoryStore history,
+                                      long metricsPeriodMillis) throws IOException {
+        return run(plan, parallelism, history, metricsPeriodMillis, WorkflowExecutor.DEFAULT_MAX_RETRIES,
+                WorkflowExecutor.DEFAULT_INITIAL_BACKOFF_MILLIS, WorkflowExecutor.DEFAULT_SPECULATION_MULTIPLIER);
+    }
+
+    /**
+     * Executes a generated workflow with explicit settings for retries and speculative execution.
+     * The other run methods retry a batch failing with a TransientWorkflowException 3 times, after 1 second and then
+     * twice as long for every retry, and do not speculate.
+     * With speculation on, a batch running longer than speculationMultiplier times the 95th percentile runtime of
+     * its job type is launched a second time while its first launch is still running. The first copy to finish is
+     * taken and the other is stopped through BatchRunner.cancel, so every BatchRunner must be safe to launch more
+     * than once for the same batch.
+     * This method may be called concurrently from multiple threads; every call runs on its own thread pool.
+     * @param plan the workflow to execute
+     * @param parallelism the maximum number of batches to run at the same time
+     * @param history the store of learned runtimes to record job runtimes to (optional)
+     * @param metricsPeriodMillis the time between metrics log lines. No metrics are printed if this is 0.
+     * @param maxRetries the maximum number of times a batch is retried. Batches are never retried if this is 0.
+     * @param retryBackoffMillis the delay before the first retry of a batch. The delay doubles with every retry.
+     * @param speculationMultiplier the multiple of the 95th percentile runtime of its job type after which a batch
+     *                              is speculated. Speculation is off if this is not positive.
+     * @return the report of the completed jobs
+     * @throws WorkflowExecutionException if any job failed, carrying the report of completed, failed and skipped jobs
+     * @throws IOException if there are problems while executing the workflow
+     */
+    public static ExecutionReport run(WorkflowPlan plan, int parallelism, RuntimeHistoryStore history,
+                                      long metricsPeriodMillis, int maxRetries, long retryBackoffMillis,
+                                      double speculationMultiplier) throws IOException {
+        WorkflowExecutor executor = new WorkflowExecutor(plan.getStages(), parallelism);
+        executor.setRuntimeHistory(history);
+        executor.setMetricsReporting(System.err, metricsPeriodMillis);
+        executor.setRetries(maxRetries, retryBackoffMillis);
+        executor.setSpeculation(speculationMultiplier, WorkflowExecutor.DEFAULT_SPECULATION_MIN_SAMPLES);
+        executor.execute();
+        return executor.getReport();
+    }
+
+    /**
+     * Register the hook used to launch batches of a job type when running a workflow
+     * @param jobType the job type to launch with this BatchRunner
+     * @param runner the BatchRunner for this job type
+     */
+    public static void registerBatchRunner(String jobType, BatchRunner runner) {
+        BatchRunnerFactory.registerBatchRunner(jobType, runner);
     }
-}
\ No newline at end of file
+}
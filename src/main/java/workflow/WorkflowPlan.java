@@ -0,0 +1,54 @@
+package workflow;
+
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Class WorkflowPlan
+ * The result of generating a workflow: its stages, and its predicted completion time if job runtimes
+ * learned from previous runs were available.
+ */
+public class WorkflowPlan {
+
+    private List<Stage> stages = null;
+    private long predictedCompletionTime;
+
+    protected WorkflowPlan(List<Stage> workflow, long completionTime) {
+        stages = Collections.unmodifiableList(workflow);
+        predictedCompletionTime = completionTime;
+    }
+
+    /**
+     * Get the stages of the workflow, in order of execution.
+     * The name, jobs and batches of a stage are available through Stage.getName(), Stage.getJobNames() and
+     * Stage.getBatches(), and the job type of a batch through JobBatch.getJobType().
+     * @return list of stages in the workflow
+     */
+    public List<Stage> getStages() {
+        return stages;
+    }
+
+    /**
+     * Get the predicted time the workflow takes to complete
+     * @return the predicted completion time in milliseconds, or -1 if the workflow was planned without runtime history
+     */
+    public long getPredictedCompletionTime() {
+        return predictedCompletionTime;
+    }
+
+    /**
+     * Print the workflow to a PrintStream
+     * @param out the PrintStream to print to
+     */
+    public void print(PrintStream out) {
+        for (Stage stage : stages) {
+            stage.print(out);
+            out.println();
+        }
+        if (predictedCompletionTime >= 0) {
+            out.println("Predicted completion time: " + predictedCompletionTime + " ms");
+            out.println();
+        }
+    }
+}
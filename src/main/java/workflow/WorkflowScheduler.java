@@ -0,0 +1,314 @@
+package workflow;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Class WorkflowScheduler
+ * Runs many workflows at once on one shared thread pool.
+ * Each workflow is executed by its own WorkflowExecutor, with stages, retries and speculation as usual,
+ * but every batch it launches waits in a queue of its workflow until the scheduler hands it a thread.
+ * Whenever a thread is free, ready batches are interleaved across workflows by
+ * - priority: a workflow with a higher priority is always served first
+ * - deadline urgency: among workflows of the same priority, a workflow whose deadline is less than the deadline
+ *   slack away (or already past) is served before the others, earliest deadline first
+ * - weighted fair share: among the remaining workflows, the one running the fewest batches relative to
+ *   its weight is served first, so a huge workflow cannot starve small ones
+ * - deadline: remaining ties go to the workflow with the earliest deadline
+ */
+public class WorkflowScheduler {
+
+    /**
+     * A workflow submitted to the scheduler, and the queue of its batches waiting for a thread
+     */
+    private class ScheduledWorkflow implements BatchDispatcher {
+        private final String name;
+        private final List<Stage> stages;
+        private final double weight;
+        private final int priority;
+        private final long deadline;
+        private final int order;
+        private final LinkedList<FutureTask<Void>> queue = new LinkedList<FutureTask<Void>>();
+        private int running = 0;
+
+        private ScheduledWorkflow(String workflowName, List<Stage> workflowStages, double workflowWeight,
+                                  int workflowPriority, long workflowDeadline, int submissionOrder) {
+            name = workflowName;
+            stages = workflowStages;
+            weight = workflowWeight;
+            priority = workflowPriority;
+            deadline = workflowDeadline;
+            order = submissionOrder;
+        }
+
+        @Override
+        public Future<?> dispatch(Runnable launch, long delayMillis) {
+            final FutureTask<Void> task = new FutureTask<Void>(launch, null);
+            if (delayMillis > 0) {
+                timer.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        enqueue(ScheduledWorkflow.this, task);
+                    }
+                }, delayMillis, TimeUnit.MILLISECONDS);
+            }
+            else {
+                enqueue(this, task);
+            }
+            return task;
+        }
+
+        /**
+         * @param urgentBefore workflows with a deadline before this time are urgent
+         * @return true if this workflow should get the next free thread before another workflow
+         */
+        private boolean isAheadOf(ScheduledWorkflow other, long urgentBefore) {
+            if (priority != other.priority) {
+                return priority > other.priority;
+            }
+            boolean urgent = deadline < urgentBefore;
+            boolean otherUrgent = other.deadline < urgentBefore;
+            if (urgent != otherUrgent) {
+                return urgent;
+            }
+            if (urgent && deadline != other.deadline) {
+                return deadline < other.deadline;
+            }
+            double share = running / weight;
+            double otherShare = other.running / other.weight;
+            if (share != otherShare) {
+                return share < otherShare;
+            }
+            if (deadline != other.deadline) {
+                return deadline < other.deadline;
+            }
+            return order < other.order;
+        }
+    }
+
+    /**
+     * Deadline of workflows submitted without one
+     */
+    public static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    private static final long DEFAULT_DEADLINE_SLACK_MILLIS = 5 * 60 * 1000;
+
+    private int parallelism;
+    private long deadlineSlackMillis = DEFAULT_DEADLINE_SLACK_MILLIS;
+    private double speculationMultiplier = WorkflowExecutor.DEFAULT_SPECULATION_MULTIPLIER;
+    private int speculationMinSamples = WorkflowExecutor.DEFAULT_SPECULATION_MIN_SAMPLES;
+    private int maxRetries = WorkflowExecutor.DEFAULT_MAX_RETRIES;
+    private long retryBackoffMillis = WorkflowExecutor.DEFAULT_INITIAL_BACKOFF_MILLIS;
+    private List<ScheduledWorkflow> workflows = new ArrayList<ScheduledWorkflow>();
+    private List<ScheduledWorkflow> active = new ArrayList<ScheduledWorkflow>();
+    private Map<String, ExecutionReport> reports = new LinkedHashMap<String, ExecutionReport>();
+    private ExecutorService pool = null;
+    private ScheduledExecutorService timer = null;
+    private AtomicInteger running = new AtomicInteger();
+
+    /**
+     * @param numThreads the number of threads in the shared pool, i.e. the maximum number of batches
+     *                   to run at the same time across all workflows
+     */
+    public WorkflowScheduler(int numThreads) {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        parallelism = numThreads;
+    }
+
+    /**
+     * Configure when a workflow is urgent enough to be served before fair share
+     * @param slackMillis a workflow is urgent once its deadline is less than this far away. The default is 5 minutes.
+     */
+    public synchronized void setDeadlineSlack(long slackMillis) {
+        deadlineSlackMillis = Math.max(slackMillis, 0);
+    }
+
+    /**
+     * Configure speculative re-execution of straggling batches in all workflows. Speculation is off by default.
+     * When it is on, a straggling batch is launched a second time while its first launch is still running, and the
+     * launch that loses is stopped through BatchRunner.cancel, so every BatchRunner must be safe to launch more than
+     * once for the same batch.
+     * @param multiplier a batch is a straggler once it runs longer than multiplier times the 95th percentile
+     *                   runtime of its job type. Speculation is off if this is not positive.
+     * @param minSamples the number of completed jobs of a job type needed before its batches are speculated
+     */
+    public synchronized void setSpeculation(double multiplier, int minSamples) {
+        speculationMultiplier = multiplier;
+        speculationMinSamples = minSamples;
+    }
+
+    /**
+     * Configure retries of batches failing with a TransientWorkflowException in all workflows.
+     * By default a batch is retried 3 times, after 1 second and then twice as long for every retry.
+     * @param retries the maximum number of times a batch is retried. Batches are never retried if this is 0.
+     * @param backoffMillis the delay before the first retry. The delay doubles with every retry.
+     */
+    public synchronized void setRetries(int retries, long backoffMillis) {
+        maxRetries = retries;
+        retryBackoffMillis = backoffMillis;
+    }
+
+    /**
+     * Submit a workflow to run when execute() is called
+     * @param name the name of the workflow, used in error messages
+     * @param plan the workflow to run
+     * @param weight the share of the pool the workflow gets relative to other workflows of the same priority
+     * @param priority workflows with a higher priority are always served before workflows with a lower one
+     * @param deadline the time (in milliseconds since the epoch) the workflow should complete by, or NO_DEADLINE
+     */
+    public synchronized void submit(String name, WorkflowPlan plan, double weight, int priority, long deadline) {
+        submit(name, plan.getStages(), weight, priority, deadline);
+    }
+
+    /**
+     * Submit a workflow to run when execute() is called
+     * @param name the name of the workflow, used in error messages
+     * @param graph the DependencyGraph to generate the workflow for
+     * @param weight the share of the pool the workflow gets relative to other workflows of the same priority
+     * @param priority workflows with a higher priority are always served before workflows with a lower one
+     * @param deadline the time (in milliseconds since the epoch) the workflow should complete by, or NO_DEADLINE
+     */
+    synchronized void submit(String name, DependencyGraph graph, double weight, int priority, long deadline) {
+        WorkflowGenerator generator = new WorkflowGenerator(graph);
+        generator.generate();
+        submit(name, generator.getWorkflow(), weight, priority, deadline);
+    }
+
+    private void submit(String name, List<Stage> stages, double weight, int priority, long deadline) {
+        if (weight <= 0) {
+            throw new IllegalArgumentException("Weight of workflow '" + name + "' must be positive");
+        }
+        workflows.add(new ScheduledWorkflow(name, stages, weight, priority, deadline, workflows.size()));
+    }
+
+    /**
+     * Run all submitted workflows on the shared pool and wait for them to complete.
+     * A workflow failing does not stop the others. The outcome of every workflow is available from getReports().
+     * @throws IOException if any of the workflows failed
+     */
+    public void execute() throws IOException {
+        List<ScheduledWorkflow> toRun;
+        synchronized (this) {
+            toRun = new ArrayList<ScheduledWorkflow>(workflows);
+            workflows.clear();
+            reports = new LinkedHashMap<String, ExecutionReport>();
+            active = toRun;
+            pool = Executors.newFixedThreadPool(parallelism);
+            timer = Executors.newSingleThreadScheduledExecutor();
+        }
+        ExecutorService coordinators = Executors.newCachedThreadPool();
+        try {
+            List<Future<Void>> results = new ArrayList<Future<Void>>();
+            for (final ScheduledWorkflow workflow : toRun) {
+                final WorkflowExecutor executor = new WorkflowExecutor(workflow.stages, parallelism);
+                executor.setDispatcher(workflow);
+                executor.getMetrics().sharePool(running);
+                synchronized (this) {
+                    executor.setSpeculation(speculationMultiplier, speculationMinSamples);
+                    executor.setRetries(maxRetries, retryBackoffMillis);
+                    reports.put(workflow.name, executor.getReport());
+                }
+                results.add(coordinators.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        executor.execute();
+                        return null;
+                    }
+                }));
+            }
+            StringBuilder failures = new StringBuilder();
+            for (int i = 0; i < results.size(); i++) {
+                try {
+                    results.get(i).get();
+                } catch (ExecutionException e) {
+                    failures.append(failures.length() == 0 ? "" : "; ").append("Workflow '")
+                            .append(toRun.get(i).name).append("' failed - ").append(e.getCause().getLocalizedMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new WorkflowException("Error: Interrupted while waiting for workflows to complete.");
+                }
+            }
+            if (failures.length() > 0) {
+                throw new WorkflowException("Error: " + failures);
+            }
+        } finally {
+            coordinators.shutdownNow();
+            synchronized (this) {
+                pool.shutdownNow();
+                timer.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Get the reports of the jobs that completed, failed and were skipped in the workflows run by the last call
+     * to execute(), including when it threw because some of them failed
+     * @return the report of every workflow by its name, in order of submission
+     */
+    public synchronized Map<String, ExecutionReport> getReports() {
+        return Collections.unmodifiableMap(new LinkedHashMap<String, ExecutionReport>(reports));
+    }
+
+    private synchronized void enqueue(ScheduledWorkflow workflow, FutureTask<Void> task) {
+        workflow.queue.add(task);
+        dispatchReady();
+    }
+
+    private synchronized void released(ScheduledWorkflow workflow) {
+        running.decrementAndGet();
+        workflow.running--;
+        dispatchReady();
+    }
+
+    /**
+     * Hand free threads to the queued batches of the workflows that are furthest ahead
+     */
+    private void dispatchReady() {
+        long now = System.currentTimeMillis();
+        long urgentBefore = now > Long.MAX_VALUE - deadlineSlackMillis ? Long.MAX_VALUE : now + deadlineSlackMillis;
+        while (running.get() < parallelism && !pool.isShutdown()) {
+            ScheduledWorkflow next = null;
+            for (ScheduledWorkflow workflow : active) {
+                if (!workflow.queue.isEmpty() && (null == next || workflow.isAheadOf(next, urgentBefore))) {
+                    next = workflow;
+                }
+            }
+            if (null == next) {
+                return;
+            }
+            final ScheduledWorkflow workflow = next;
+            final FutureTask<Void> task = workflow.queue.removeFirst();
+            if (task.isCancelled()) {
+                continue;
+            }
+            running.incrementAndGet();
+            workflow.running++;
+            pool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        task.run();
+                    } finally {
+                        released(workflow);
+                    }
+                }
+            });
+        }
+    }
+}
@@ -6,13 +6,55 @@ import org.testng.annotations.Test;
 import workflow.InputParserFactory;
 import workflow.WorkflowUtil;
 
+import javax.management.ObjectName;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Contains some preliminary unit tests for the WorkflowManager API
  */
 public class TestWorkflow {
+
+    /**
+     * InputParserProvider discovered through META-INF/services in the test resources,
+     * listed after an entry naming a class that does not exist
+     */
+    public static class SingleTaskInputParserProvider implements InputParserProvider {
+        @Override
+        public String getInputType() {
+            return "singletask";
+        }
+
+        @Override
+        public InputParser newInputParser() {
+            return new InputParser() {
+                @Override
+                public DependencyGraph parse(String inputSource) throws IOException {
+                    DependencyGraph graph = new DependencyGraph();
+                    graph.addTask(new DependencyGraph.TaskNode(inputSource, null, "Single"));
+                    return graph;
+                }
+            };
+        }
+    }
+
     private DependencyGraph graph = null;
     private final String toTaskName = "to";
     private final String toTaskType = "toType";
@@ -72,4 +114,574 @@ public class TestWorkflow {
     public void testDuplicateError() throws IOException {
         graph.addTask(to);
     }
+
+    @Test
+    public void testJobCoalescer() throws IOException {
+        DependencyGraph hiveGraph = new DependencyGraph();
+        for (int i = 0; i < 5; i++) {
+            hiveGraph.addTask(new DependencyGraph.TaskNode("hive" + i, null, "Hive"));
+        }
+        hiveGraph.addTask(new DependencyGraph.TaskNode("pig", null, "Pig"));
+        WorkflowGenerator generator = new WorkflowGenerator(hiveGraph);
+        generator.generate();
+        generator.coalesce(2);
+        List<JobBatch> batches = generator.getWorkflow().get(0).getBatches();
+        Assert.assertEquals(batches.size(), 4);
+        Assert.assertEquals(batches.get(0).getJobType(), "Hive");
+        Assert.assertEquals(batches.get(0).size(), 2);
+        Assert.assertEquals(batches.get(2).size(), 1);
+        Assert.assertEquals(batches.get(3).getJobType(), "Pig");
+    }
+
+    @Test
+    public void testWorkflowExecutor() throws IOException {
+        final List<String> launched = Collections.synchronizedList(new ArrayList<String>());
+        BatchRunner runner = new BatchRunner() {
+            @Override
+            public void run(JobBatch batch) {
+                launched.add(batch.toString());
+            }
+
+            @Override
+            public void cancel(JobBatch batch) {
+            }
+        };
+        BatchRunnerFactory.registerBatchRunner(toTaskType, runner);
+        BatchRunnerFactory.registerBatchRunner(fromTaskType, runner);
+        WorkflowGenerator generator = new WorkflowGenerator(graph);
+        generator.generate();
+        generator.coalesce(10);
+        new WorkflowExecutor(generator.getWorkflow(), 2).execute();
+        Assert.assertEquals(launched, Arrays.asList(new String[]{toTaskType + " [" + toTaskName + "]",
+                fromTaskType + " [" + fromTaskName + "]"}));
+    }
+
+    @Test
+    public void testTransientFailureRetry() throws IOException {
+        final List<String> attempts = Collections.synchronizedList(new ArrayList<String>());
+        BatchRunnerFactory.registerBatchRunner("Flaky", new BatchRunner() {
+            @Override
+            public void run(JobBatch batch) throws IOException {
+                attempts.add(batch.toString());
+                if (attempts.size() < 3) {
+                    throw new TransientWorkflowException("Cluster busy");
+                }
+            }
+
+            @Override
+            public void cancel(JobBatch batch) {
+            }
+        });
+        DependencyGraph flakyGraph = new DependencyGraph();
+        flakyGraph.addTask(new DependencyGraph.TaskNode("flaky", null, "Flaky"));
+        WorkflowGenerator generator = new WorkflowGenerator(flakyGraph);
+        generator.generate();
+        WorkflowExecutor executor = new WorkflowExecutor(generator.getWorkflow(), 1);
+        executor.setRetries(3, 1);
+        executor.execute();
+        Assert.assertEquals(attempts.size(), 3);
+    }
+
+    @Test
+    public void testStragglerSpeculation() throws IOException {
+        final List<String> attempts = Collections.synchronizedList(new ArrayList<String>());
+        final List<String> cancelled = Collections.synchronizedList(new ArrayList<String>());
+        BatchRunnerFactory.registerBatchRunner("Slow", new BatchRunner() {
+            @Override
+            public void run(JobBatch batch) throws IOException {
+                attempts.add(batch.getJobs().get(0).getName());
+                long sleepMillis = batch.getJobs().get(0).getName().equals("straggler") &&
+                        Collections.frequency(attempts, "straggler") == 1 ? 30000 : 10;
+                try {
+                    Thread.sleep(sleepMillis);
+                } catch (InterruptedException e) {
+                    throw new WorkflowException("Interrupted");
+                }
+            }
+
+            @Override
+            public void cancel(JobBatch batch) {
+                cancelled.add(batch.getJobNames().get(0));
+            }
+        });
+        DependencyGraph slowGraph = new DependencyGraph();
+        for (int i = 0; i < 5; i++) {
+            slowGraph.addTask(new DependencyGraph.TaskNode("slow" + i, null, "Slow"));
+        }
+        slowGraph.addTask(new DependencyGraph.TaskNode("straggler", null, "Slow"));
+        WorkflowGenerator generator = new WorkflowGenerator(slowGraph);
+        generator.generate();
+        WorkflowExecutor executor = new WorkflowExecutor(generator.getWorkflow(), 8);
+        executor.setSpeculation(2.0, 3);
+        long start = System.currentTimeMillis();
+        executor.execute();
+        Assert.assertTrue(System.currentTimeMillis() - start < 10000);
+        Assert.assertEquals(Collections.frequency(attempts, "straggler"), 2);
+        Assert.assertEquals(cancelled, Arrays.asList(new String[]{"straggler"}));
+    }
+
+    @Test
+    public void testRuntimeHistoryStore() throws IOException {
+        File directory = new File(System.getProperty("java.io.tmpdir"), "workflow-history-" + System.nanoTime());
+        RuntimeHistoryStore history = new RuntimeHistoryStore(directory, 0.5);
+        history.record(toTaskName, toTaskType, 100);
+        history.record(toTaskName, toTaskType, 200);
+        history.close();
+
+        history = new RuntimeHistoryStore(directory, 0.5);
+        Assert.assertEquals(history.estimate(to), 150);
+        history.record(fromTaskName, toTaskType, 1000);
+        history.close();
+
+        history = new RuntimeHistoryStore(directory, 0.5);
+        DependencyGraph.TaskNode unseen = new DependencyGraph.TaskNode("unseen", null, toTaskType);
+        Assert.assertEquals(history.estimate(unseen), 575);
+        Assert.assertEquals(history.estimate(from), -1);
+
+        DependencyGraph timedGraph = new DependencyGraph();
+        timedGraph.addTask(new DependencyGraph.TaskNode(toTaskName, null, toTaskType));
+        timedGraph.addTask(new DependencyGraph.TaskNode(fromTaskName, null, toTaskType));
+        WorkflowGenerator generator = new WorkflowGenerator(timedGraph);
+        generator.generate();
+        generator.orderByEstimates(history);
+        Assert.assertEquals(generator.getWorkflow().get(0).getAllJobs().get(0).getName(), fromTaskName);
+        Assert.assertEquals(generator.predictCompletionTime(history, 0), 1000);
+        Assert.assertEquals(generator.predictCompletionTime(history, 1), 1150);
+        generator.coalesce(2);
+        Assert.assertEquals(generator.predictCompletionTime(history, 0), 1150);
+        history.close();
+
+        // a store that can no longer be written to does not stop a run
+        BatchRunnerFactory.registerBatchRunner("Recorded", new BatchRunner() {
+            @Override
+            public void run(JobBatch batch) {
+            }
+
+            @Override
+            public void cancel(JobBatch batch) {
+            }
+        });
+        DependencyGraph recordedGraph = new DependencyGraph();
+        recordedGraph.addTask(new DependencyGraph.TaskNode("first", null, "Recorded"));
+        recordedGraph.addTask(new DependencyGraph.TaskNode("second", Arrays.asList(new String[]{"first"}), "Recorded"));
+        generator = new WorkflowGenerator(recordedGraph);
+        generator.generate();
+        WorkflowExecutor executor = new WorkflowExecutor(generator.getWorkflow(), 2);
+        executor.setRuntimeHistory(history);
+        executor.execute();
+        Assert.assertEquals(executor.getReport().getCompletedJobs(), Arrays.asList(new String[]{"first", "second"}));
+
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testServiceLoaderInputParser() throws IOException {
+        WorkflowPlan plan = WorkflowManager.plan("singletask", "only");
+        Assert.assertEquals(plan.getStages().size(), 1);
+        Assert.assertEquals(plan.getStages().get(0).getAllJobs().get(0).getName(), "only");
+        // the bad entry listed before it is skipped without breaking the built-in input types
+        Assert.assertTrue(InputParserFactory.getInstance(WorkflowUtil.PROPERTIES_FILE_INPUT_TYPE)
+                instanceof PropertiesFileInputParser);
+    }
+
+    @Test
+    public void testConcurrentPlans() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<WorkflowPlan>> plans = new ArrayList<Future<WorkflowPlan>>();
+        for (int i = 0; i < 64; i++) {
+            final String inputType = i % 2 == 0 ? WorkflowUtil.PROPERTIES_FILE_INPUT_TYPE : "singletask";
+            final String inputSource = i % 2 == 0 ? "workflow.properties" : "task" + i;
+            plans.add(pool.submit(new Callable<WorkflowPlan>() {
+                @Override
+                public WorkflowPlan call() throws Exception {
+                    return WorkflowManager.plan(inputType, inputSource);
+                }
+            }));
+        }
+        for (int i = 0; i < plans.size(); i++) {
+            List<Stage> stages = plans.get(i).get().getStages();
+            Assert.assertEquals(stages.size(), i % 2 == 0 ? 3 : 1);
+            Assert.assertEquals(stages.get(0).getName(), "Stage1");
+            Assert.assertEquals(stages.get(stages.size() - 1).getJobNames().size(),
+                    stages.get(stages.size() - 1).getBatches().size());
+        }
+        pool.shutdown();
+    }
+
+    @Test
+    public void testExternalWorkflowGenerator() throws IOException {
+        File directory = new File(System.getProperty("java.io.tmpdir"), "workflow-external-" + System.nanoTime());
+        ExternalDependencyGraph external = new ExternalDependencyGraph(directory);
+        JsonTaskReader reader = new JsonTaskReader(new FileInputStream("workflow.json"));
+        for (DependencyGraph.TaskNode task = reader.next(); null != task; task = reader.next()) {
+            external.addTask(task);
+        }
+        reader.close();
+        ExternalWorkflowGenerator externalGenerator = new ExternalWorkflowGenerator(external);
+        externalGenerator.generate();
+
+        WorkflowGenerator generator = new WorkflowGenerator(new JsonFileInputParser().parse("workflow.json"));
+        generator.generate();
+        Assert.assertEquals(externalGenerator.getStageCount(), generator.getWorkflow().size());
+        for (int stage = 1; stage <= externalGenerator.getStageCount(); stage++) {
+            List<String> externalJobs = new ArrayList<String>();
+            for (int id : externalGenerator.getStage(stage)) {
+                externalJobs.add(external.getName(id));
+            }
+            List<String> jobs = new ArrayList<String>();
+            for (DependencyGraph.TaskNode job : generator.getWorkflow().get(stage - 1).getAllJobs()) {
+                jobs.add(job.getName());
+            }
+            Assert.assertEquals(externalJobs, jobs);
+        }
+        externalGenerator.close();
+        external.close();
+        Assert.assertFalse(directory.exists());
+    }
+
+    @Test
+    public void testExternalDependencyGraphIndexGrowth() throws IOException {
+        File directory = new File(System.getProperty("java.io.tmpdir"), "workflow-external-" + System.nanoTime());
+        ExternalDependencyGraph external = new ExternalDependencyGraph(directory);
+        int taskCount = 100000;
+        for (int i = 0; i < taskCount; i++) {
+            List<String> dependencies = i == 0 ? null : Arrays.asList(new String[]{"task" + (i / 2)});
+            external.addTask(new DependencyGraph.TaskNode("task" + i, i == 1 ? null : dependencies, "type" + (i % 3)));
+        }
+        Assert.assertEquals(external.findTask("task" + (taskCount - 1)), taskCount - 1);
+        Assert.assertEquals(external.findTask("missing"), -1);
+        ExternalWorkflowGenerator externalGenerator = new ExternalWorkflowGenerator(external);
+        externalGenerator.generate();
+        Assert.assertEquals(externalGenerator.getStageCount(), 17);
+        Assert.assertEquals(external.getJobType(5), "type2");
+        externalGenerator.close();
+        external.close();
+        Assert.assertFalse(directory.exists());
+    }
+
+    @Test
+    public void testExecutionMetrics() throws IOException {
+        final List<Integer> registeredMBeans = Collections.synchronizedList(new ArrayList<Integer>());
+        BatchRunnerFactory.registerBatchRunner("Measured", new BatchRunner() {
+            @Override
+            public void run(JobBatch batch) throws IOException {
+                try {
+                    registeredMBeans.add(ManagementFactory.getPlatformMBeanServer()
+                            .queryNames(new ObjectName("workflow:type=ExecutionMetrics,*"), null).size());
+                    Thread.sleep(20);
+                } catch (Exception e) {
+                    throw new WorkflowException(e.getMessage());
+                }
+            }
+
+            @Override
+            public void cancel(JobBatch batch) {
+            }
+        });
+        DependencyGraph measuredGraph = new DependencyGraph();
+        for (int i = 0; i < 6; i++) {
+            measuredGraph.addTask(new DependencyGraph.TaskNode("measured" + i, null, "Measured"));
+        }
+        WorkflowGenerator generator = new WorkflowGenerator(measuredGraph);
+        generator.generate();
+        generator.coalesce(2);
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        WorkflowExecutor executor = new WorkflowExecutor(generator.getWorkflow(), 2);
+        executor.setMetricsReporting(new PrintStream(log, true), 10);
+        executor.execute();
+
+        ExecutionMetrics metrics = executor.getMetrics();
+        Assert.assertEquals(metrics.getLaunchedAttempts(), 3);
+        Assert.assertEquals(metrics.getCompletedBatches(), 3);
+        Assert.assertEquals(metrics.getReadyJobs(), 0);
+        Assert.assertEquals(metrics.getRunningBatches(), 0);
+        Assert.assertEquals(metrics.getJobTypeLatencies().length, 1);
+        Assert.assertTrue(metrics.getJobTypeLatencies()[0].startsWith("Measured wait[n=3"));
+        Assert.assertTrue(registeredMBeans.get(0) > 0);
+        Assert.assertTrue(log.toString().contains("launched=3"));
+    }
+
+    @Test
+    public void testWorkflowSchedulerFairShare() throws IOException {
+        final List<String> finished = Collections.synchronizedList(new ArrayList<String>());
+        BatchRunner runner = new BatchRunner() {
+            @Override
+            public void run(JobBatch batch) throws IOException {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    throw new WorkflowException("Interrupted");
+                }
+                finished.add(batch.getJobType());
+            }
+
+            @Override
+            public void cancel(JobBatch batch) {
+            }
+        };
+        BatchRunnerFactory.registerBatchRunner("Big", runner);
+        BatchRunnerFactory.registerBatchRunner("Small", runner);
+        DependencyGraph big = new DependencyGraph();
+        for (int i = 0; i < 20; i++) {
+            big.addTask(new DependencyGraph.TaskNode("big" + i, null, "Big"));
+        }
+        DependencyGraph small = new DependencyGraph();
+        small.addTask(new DependencyGraph.TaskNode("small0", null, "Small"));
+        small.addTask(new DependencyGraph.TaskNode("small1", Arrays.asList(new String[]{"small0"}), "Small"));
+
+        WorkflowScheduler scheduler = new WorkflowScheduler(2);
+        scheduler.submit("big", big, 1, 0, WorkflowScheduler.NO_DEADLINE);
+        scheduler.submit("small", small, 1, 0, WorkflowScheduler.NO_DEADLINE);
+        scheduler.execute();
+
+        Assert.assertEquals(finished.size(), 22);
+        Assert.assertEquals(scheduler.getReports().keySet(), new HashSet<String>(Arrays.asList(new String[]{"big", "small"})));
+        Assert.assertEquals(scheduler.getReports().get("small").getCompletedJobs().size(), 2);
+        Assert.assertTrue(finished.lastIndexOf("Small") < 8);
+    }
+
+    @Test
+    public void testPartialContinuationOnFailure() throws IOException {
+        BatchRunnerFactory.registerBatchRunner("Partial", new BatchRunner() {
+            @Override
+            public void run(JobBatch batch) throws IOException {
+                for (DependencyGraph.TaskNode job : batch.getJobs()) {
+                    if (job.getName().equals("broken")) {
+                        throw new WorkflowException("Bad input");
+                    }
+                }
+            }
+
+            @Override
+            public void cancel(JobBatch batch) {
+            }
+        });
+        DependencyGraph partialGraph = new DependencyGraph();
+        partialGraph.addTask(new DependencyGraph.TaskNode("broken", null, "Partial"));
+        partialGraph.addTask(new DependencyGraph.TaskNode("healthy", null, "Partial"));
+        partialGraph.addTask(new DependencyGraph.TaskNode("child", Arrays.asList(new String[]{"broken"}), "Partial"));
+        partialGraph.addTask(new DependencyGraph.TaskNode("sibling", Arrays.asList(new String[]{"healthy"}), "Partial"));
+        partialGraph.addTask(new DependencyGraph.TaskNode("grandchild",
+                Arrays.asList(new String[]{"child", "sibling"}), "Partial"));
+        WorkflowGenerator generator = new WorkflowGenerator(partialGraph);
+        generator.generate();
+        WorkflowExecutor executor = new WorkflowExecutor(generator.getWorkflow(), 2);
+        try {
+            executor.execute();
+            Assert.fail("Expected the failed job to fail the workflow");
+        } catch (WorkflowExecutionException e) {
+            Assert.assertTrue(e.getMessage().contains("Bad input"));
+            Assert.assertSame(e.getReport(), executor.getReport());
+        }
+        ExecutionReport report = executor.getReport();
+        Assert.assertFalse(report.isSuccessful());
+        Assert.assertEquals(report.getFailedJobs(), Arrays.asList(new String[]{"broken"}));
+        Assert.assertEquals(report.getFailure("broken"), "Bad input");
+        Assert.assertEquals(new HashSet<String>(report.getCompletedJobs()),
+                new HashSet<String>(Arrays.asList(new String[]{"healthy", "sibling"})));
+        Assert.assertEquals(new HashSet<String>(report.getSkippedJobs()),
+                new HashSet<String>(Arrays.asList(new String[]{"child", "grandchild"})));
+    }
+
+    @Test
+    public void testPartialBatchFailure() throws IOException {
+        BatchRunnerFactory.registerBatchRunner("Coalesced", new BatchRunner() {
+            @Override
+            public void run(JobBatch batch) throws IOException {
+                if (batch.getJobNames().contains("bad")) {
+                    throw new BatchFailureException("Query failed", Arrays.asList(new String[]{"bad"}));
+                }
+            }
+
+            @Override
+            public void cancel(JobBatch batch) {
+            }
+        });
+        DependencyGraph coalescedGraph = new DependencyGraph();
+        coalescedGraph.addTask(new DependencyGraph.TaskNode("good", null, "Coalesced"));
+        coalescedGraph.addTask(new DependencyGraph.TaskNode("bad", null, "Coalesced"));
+        coalescedGraph.addTask(new DependencyGraph.TaskNode("other", null, "Coalesced"));
+        coalescedGraph.addTask(new DependencyGraph.TaskNode("afterGood", Arrays.asList(new String[]{"good"}), "Coalesced"));
+        coalescedGraph.addTask(new DependencyGraph.TaskNode("afterBad", Arrays.asList(new String[]{"bad"}), "Coalesced"));
+        WorkflowGenerator generator = new WorkflowGenerator(coalescedGraph);
+        generator.generate();
+        generator.coalesce(10);
+        WorkflowExecutor executor = new WorkflowExecutor(generator.getWorkflow(), 2);
+        try {
+            executor.execute();
+            Assert.fail("Expected the failed job to fail the workflow");
+        } catch (WorkflowExecutionException e) {
+            Assert.assertTrue(e.getMessage().contains("Jobs Coalesced [bad] of batch"));
+        }
+        ExecutionReport report = executor.getReport();
+        Assert.assertEquals(report.getFailedJobs(), Arrays.asList(new String[]{"bad"}));
+        Assert.assertEquals(report.getCompletedJobs(), Arrays.asList(new String[]{"good", "other", "afterGood"}));
+        Assert.assertEquals(report.getSkippedJobs(), Arrays.asList(new String[]{"afterBad"}));
+    }
+
+    @Test
+    public void testGraphAnalyzer() throws IOException {
+        DependencyGraph shapeGraph = new DependencyGraph();
+        shapeGraph.addTask(new DependencyGraph.TaskNode("a", null, "Hive"));
+        shapeGraph.addTask(new DependencyGraph.TaskNode("b", null, "Pig"));
+        shapeGraph.addTask(new DependencyGraph.TaskNode("lonely", null, "Pig"));
+        shapeGraph.addTask(new DependencyGraph.TaskNode("c", Arrays.asList(new String[]{"a"}), "Hive"));
+        shapeGraph.addTask(new DependencyGraph.TaskNode("d", Arrays.asList(new String[]{"a", "b"}), "Hive"));
+        shapeGraph.addTask(new DependencyGraph.TaskNode("e", Arrays.asList(new String[]{"c", "d"}), "Pig"));
+        GraphReport report = new GraphAnalyzer(shapeGraph).analyze();
+
+        Assert.assertEquals(report.getTaskCount(), 6);
+        Assert.assertEquals(report.getDependencyCount(), 5);
+        Assert.assertEquals(report.getDepth(), 3);
+        Assert.assertEquals(report.getStageWidths(), Arrays.asList(new Integer[]{3, 2, 1}));
+        Assert.assertEquals(report.getJobTypeMix().get(0).get("Pig"), Integer.valueOf(2));
+        Assert.assertEquals(report.getJobTypeMix().get(1).get("Hive"), Integer.valueOf(2));
+        Assert.assertEquals(report.getFanInHistogram().toString(), "{0=3, 1=1, 2=2}");
+        Assert.assertEquals(report.getFanOutHistogram().toString(), "{0=2, 1=3, 2=1}");
+        Assert.assertEquals(report.getLongestChains(),
+                Arrays.asList(Arrays.asList(new String[]{"a", "c", "e"})));
+        Assert.assertEquals(report.getComponentCount(), 2);
+        Assert.assertEquals(report.getLargestComponent(), 5);
+        Assert.assertEquals(report.getIsolatedTasks(), 1);
+
+        WorkflowGenerator generator = new WorkflowGenerator(shapeGraph);
+        generator.generate();
+        Assert.assertEquals(generator.getWorkflow().size(), report.getDepth());
+        for (int i = 0; i < report.getDepth(); i++) {
+            Assert.assertEquals(generator.getWorkflow().get(i).getAllJobs().size(),
+                    report.getStageWidths().get(i).intValue());
+        }
+    }
+
+    @Test
+    public void testCompressedChunkedInput() throws IOException {
+        File directory = new File(System.getProperty("java.io.tmpdir"), "workflow-chunks-" + System.nanoTime());
+        Assert.assertTrue(directory.mkdirs());
+        File plainJson = new File(directory, "part-0.json");
+        File gzipJson = new File(directory, "part-1.json.gz");
+        writeChunk(plainJson, false, "{\"tasks\": [{\"Job1\": {\"job_type\": \"Hive\"}}, " +
+                "{\"Job2\": {\"job_type\": \"Pig\"}}]}");
+        // two gzip members concatenated in one chunk
+        writeChunk(gzipJson, true, "{\"tasks\": [{\"Job3\": {\"job_type\": \"Hive\", " +
+                "\"depends_on\": [\"Job1\", \"Job2\"]}}]}");
+        appendChunk(gzipJson, "{\"tasks\": [{\"Job4\": {\"job_type\": \"Pig\", \"depends_on\": [\"Job3\"]}}]}");
+        DependencyGraph jsonGraph = new JsonFileInputParser().parse(plainJson.getPath() + "," + gzipJson.getPath());
+        Assert.assertEquals(jsonGraph.getAllTasks().size(), 4);
+        WorkflowGenerator generator = new WorkflowGenerator(jsonGraph);
+        generator.generate();
+        Assert.assertEquals(generator.getWorkflow().size(), 3);
+
+        File plainProperties = new File(directory, "part-0.properties");
+        File gzipProperties = new File(directory, "part-1.properties.gz");
+        writeChunk(plainProperties, false, "tasks = t1\nt1.job_type = Hive\n");
+        writeChunk(gzipProperties, true, "tasks = t2\nt2.job_type = Pig\nt2.depends_on = t1\n");
+        DependencyGraph propertiesGraph = new PropertiesFileInputParser().parse(
+                plainProperties.getPath() + ", " + gzipProperties.getPath());
+        Assert.assertEquals(propertiesGraph.getAllTasks().size(), 2);
+        Assert.assertEquals(propertiesGraph.dependenciesOf(propertiesGraph.getTaskByName("t2")),
+                Arrays.asList(new String[]{"t1"}));
+
+        File commaInName = new File(directory, "workflow,v2.properties");
+        writeChunk(commaInName, false, "tasks = t1\nt1.job_type = Hive\n");
+        Assert.assertEquals(new PropertiesFileInputParser().parse(commaInName.getPath()).getAllTasks().size(), 1);
+
+        for (File chunk : directory.listFiles()) {
+            chunk.delete();
+        }
+        directory.delete();
+    }
+
+    private static void writeChunk(File chunk, boolean compress, String contents) throws IOException {
+        OutputStream out = new FileOutputStream(chunk);
+        if (compress) {
+            out = new GZIPOutputStream(out);
+        }
+        out.write(contents.getBytes("UTF-8"));
+        out.close();
+    }
+
+    private static void appendChunk(File chunk, String contents) throws IOException {
+        OutputStream out = new GZIPOutputStream(new FileOutputStream(chunk, true));
+        out.write(contents.getBytes("UTF-8"));
+        out.close();
+    }
+
+    @Test
+    public void testMissingBatchRunnerFailsBeforeLaunch() throws IOException {
+        final List<String> launched = Collections.synchronizedList(new ArrayList<String>());
+        BatchRunnerFactory.registerBatchRunner("Registered", new BatchRunner() {
+            @Override
+            public void run(JobBatch batch) {
+                launched.addAll(batch.getJobNames());
+            }
+
+            @Override
+            public void cancel(JobBatch batch) {
+            }
+        });
+        DependencyGraph unregisteredGraph = new DependencyGraph();
+        unregisteredGraph.addTask(new DependencyGraph.TaskNode("first", null, "Registered"));
+        unregisteredGraph.addTask(new DependencyGraph.TaskNode("second", Arrays.asList(new String[]{"first"}),
+                "Unregistered"));
+        WorkflowGenerator generator = new WorkflowGenerator(unregisteredGraph);
+        generator.generate();
+        try {
+            new WorkflowExecutor(generator.getWorkflow(), 1).execute();
+            Assert.fail("Expected a missing BatchRunner to fail the workflow");
+        } catch (WorkflowException e) {
+            Assert.assertTrue(e.getMessage().contains("Unregistered"));
+        }
+        Assert.assertTrue(launched.isEmpty());
+    }
+
+    @Test
+    public void testSharedPoolUtilization() {
+        ExecutionMetrics metrics = new ExecutionMetrics(4);
+        Assert.assertEquals(metrics.getPoolUtilization(), 0);
+        metrics.sharePool(new AtomicInteger(3));
+        Assert.assertEquals(metrics.getPoolUtilization(), 75);
+    }
+
+    @Test
+    public void testWorkflowSchedulerDeadlineUrgency() throws IOException {
+        final List<String> finished = Collections.synchronizedList(new ArrayList<String>());
+        BatchRunner runner = new BatchRunner() {
+            @Override
+            public void run(JobBatch batch) throws IOException {
+                try {
+                    Thread.sleep(30);
+                } catch (InterruptedException e) {
+                    throw new WorkflowException("Interrupted");
+                }
+                finished.add(batch.getJobType());
+            }
+
+            @Override
+            public void cancel(JobBatch batch) {
+            }
+        };
+        BatchRunnerFactory.registerBatchRunner("Relaxed", runner);
+        BatchRunnerFactory.registerBatchRunner("Urgent", runner);
+        DependencyGraph relaxed = new DependencyGraph();
+        for (int i = 0; i < 12; i++) {
+            relaxed.addTask(new DependencyGraph.TaskNode("relaxed" + i, null, "Relaxed"));
+        }
+        DependencyGraph urgent = new DependencyGraph();
+        for (int i = 0; i < 6; i++) {
+            urgent.addTask(new DependencyGraph.TaskNode("urgent" + i, null, "Urgent"));
+        }
+
+        // the relaxed workflow would get most of the pool by fair share, but the urgent one is close to its deadline
+        WorkflowScheduler scheduler = new WorkflowScheduler(2);
+        scheduler.setDeadlineSlack(60000);
+        scheduler.submit("relaxed", relaxed, 10, 0, WorkflowScheduler.NO_DEADLINE);
+        scheduler.submit("urgent", urgent, 1, 0, System.currentTimeMillis() + 1000);
+        scheduler.execute();
+
+        Assert.assertEquals(finished.size(), 18);
+        Assert.assertTrue(finished.lastIndexOf("Urgent") < 9);
+    }
 }